@@ -0,0 +1,22 @@
+package Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Запуск JMH с профилировщиком GC (скорость выделения памяти, gc.alloc.rate.norm) и результатами
+// в jmh-result.json, чтобы сравнивать прогоны с базовой линией. Аргументы — обычные аргументы JMH.
+public class BenchmarkMain {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder opts = new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class);
+        if (!cli.getResult().hasValue()) opts.result("jmh-result.json");
+        if (!cli.getResultFormat().hasValue()) opts.resultFormat(ResultFormatType.JSON);
+        new Runner(opts.build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import Models.HistoryFilter;
+import Models.HistoryPage;
+import Models.Wallet;
+import Services.CsvExporter;
+import Services.FileStorage;
+import Services.WalletJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Снимок кошелька (JSON и колоночный формат) и экспорт CSV во временный каталог
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class FileStorageBench {
+    private static final String LOGIN = "bench";
+
+    @Param({"1000", "100000", "1000000"})
+    public int transactions;
+
+    @Param({"JSON", "COLUMNAR"})
+    public FileStorage.Format format;
+
+    private Path dir;
+    private FileStorage storage;
+    private Wallet wallet;
+    private WalletJournal journal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("pf-bench");
+        storage = new FileStorage(dir, format);
+        wallet = WalletGenerator.wallet(LOGIN, transactions, 42);
+        if (!storage.saveUserWallet(wallet)) throw new IllegalStateException("Не удалось записать снимок");
+        journal = new WalletJournal(storage);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean saveUserWallet() {
+        return storage.saveUserWallet(wallet);
+    }
+
+    @Benchmark
+    public Optional<Wallet> loadUserWallet() {
+        return storage.loadUserWallet(LOGIN);
+    }
+
+    // не зависит от формата снимка; для COLUMNAR повторяет тот же замер. Включает копирование строк (CsvExporter.select)
+    @Benchmark
+    public long exportCsv() throws IOException {
+        return storage.exportCsv(LOGIN, CsvExporter.select(wallet, CsvExporter.Filter.ALL), false);
+    }
+
+    // первая страница истории кошелька не в памяти: COLUMNAR — хвост упорядоченного файла, JSON — потоковый проход
+    @Benchmark
+    public HistoryPage historyFirstPage() {
+        return journal.readHistory(LOGIN, HistoryFilter.ALL, null, 20);
+    }
+}
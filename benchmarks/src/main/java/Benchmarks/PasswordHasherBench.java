@@ -0,0 +1,28 @@
+package Benchmarks;
+
+import Services.PasswordHasher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Стоимость одной проверки пароля (PBKDF2, 185000 итераций) — определяет пропускную способность входа
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class PasswordHasherBench {
+    private final char[] password = "correct horse battery staple".toCharArray();
+    private byte[] salt;
+
+    @Setup
+    public void setUp() {
+        salt = PasswordHasher.newSalt();
+    }
+
+    @Benchmark
+    public String hash() {
+        return PasswordHasher.hash(password, salt);
+    }
+}
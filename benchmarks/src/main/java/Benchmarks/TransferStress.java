@@ -0,0 +1,83 @@
+package Benchmarks;
+
+import Models.Money;
+import Repositories.ConcurrentWalletRepository;
+import Services.TransferService;
+import Services.WalletService;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочная проверка переводов: N потоков делают случайные (в том числе встречные) переводы
+// между кошельками и в конце проверяется, что общая сумма денег не изменилась.
+// Запуск: java -cp benchmarks/target/benchmarks.jar Benchmarks.TransferStress [потоки] [кошельки] [переводов на поток]
+public class TransferStress {
+    private static final long START_BALANCE = 100_000_000; // копейки
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int walletCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int perThread = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        WalletService wallets = new WalletService(new ConcurrentWalletRepository());
+        TransferService transfers = new TransferService(wallets);
+        String[] logins = new String[walletCount];
+        for (int i = 0; i < walletCount; i++) {
+            logins[i] = "user" + i;
+            wallets.addIncome(logins[i], "Старт", START_BALANCE, null, LocalDateTime.now());
+        }
+
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        int a = rnd.nextInt(walletCount);
+                        int b = rnd.nextInt(walletCount - 1);
+                        if (b >= a) b++;
+                        try {
+                            transfers.transfer(logins[a], logins[b], 1 + rnd.nextInt(10_000), "stress");
+                        } catch (RuntimeException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "transfer-" + t).start();
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - t0;
+
+        long total = 0;
+        long txns = 0;
+        for (String login : logins) {
+            total += wallets.read(login, w -> w.balance());
+            txns += wallets.read(login, w -> w.size());
+        }
+        long ops = (long) threads * perThread;
+        long expectedTotal = START_BALANCE * walletCount;
+        long expectedTxns = walletCount + 2 * (ops - failed.get());
+
+        System.out.printf("Потоков: %d, кошельков: %d, переводов: %d (ошибок %d)%n", threads, walletCount, ops, failed.get());
+        System.out.printf("Время: %.1f мс, пропускная способность: %,.0f переводов/с%n", elapsed / 1e6, ops / (elapsed / 1e9));
+        System.out.printf("Сумма по кошелькам: %s (ожидалось %s), транзакций: %d (ожидалось %d)%n",
+                Money.toString(total), Money.toString(expectedTotal), txns, expectedTxns);
+        if (total != expectedTotal || txns != expectedTxns) {
+            System.out.println("ОШИБКА: баланс системы нарушен");
+            System.exit(1);
+        }
+        System.out.println("OK: сумма денег сохранена");
+    }
+}
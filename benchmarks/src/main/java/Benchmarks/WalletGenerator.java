@@ -0,0 +1,50 @@
+package Benchmarks;
+
+import Enums.TxnType;
+import Models.Transaction;
+import Models.Wallet;
+
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+
+// Синтетические кошельки для бенчмарков: детерминированные по seed, с реалистичным разбросом
+// категорий, сумм и дат (несколько лет, время не по порядку) и с бюджетами на часть категорий.
+public final class WalletGenerator {
+    public static final int CATEGORIES = 40;
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private static final long SPAN_SECONDS = 5L * 365 * 24 * 3600;
+
+    private static final String[] CATEGORY_NAMES = new String[CATEGORIES];
+    static {
+        for (int i = 0; i < CATEGORIES; i++) CATEGORY_NAMES[i] = "Категория " + i;
+    }
+
+    private WalletGenerator() {}
+
+    public static String category(int i) {
+        return CATEGORY_NAMES[i % CATEGORIES];
+    }
+
+    public static Wallet wallet(String login, int transactions, long seed) {
+        Wallet w = new Wallet(login);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int i = 0; i < transactions; i++) w.addTransaction(transaction(rnd));
+        for (int i = 0; i < CATEGORIES; i += 2) w.setBudget(category(i), 1_000_000_00L + rnd.nextLong(1_000_000_00L));
+        return w;
+    }
+
+    public static Transaction transaction(SplittableRandom rnd) {
+        // доходов примерно в 4 раза меньше, чем расходов
+        TxnType type = rnd.nextInt(5) == 0 ? TxnType.INCOME : TxnType.EXPENSE;
+        long amount = 100 + rnd.nextLong(type == TxnType.INCOME ? 10_000_000 : 500_000);
+        String note = rnd.nextInt(3) == 0 ? "заметка, №" + rnd.nextInt(1000) : null;
+        LocalDateTime at = START.plusSeconds(rnd.nextLong(SPAN_SECONDS));
+        return new Transaction(type, category(skewed(rnd)), amount, note, at);
+    }
+
+    // первые категории встречаются чаще, как в реальных данных
+    private static int skewed(SplittableRandom rnd) {
+        int a = rnd.nextInt(CATEGORIES);
+        return Math.min(a, rnd.nextInt(CATEGORIES));
+    }
+}
@@ -0,0 +1,85 @@
+package Benchmarks;
+
+import Models.BudgetEvent;
+import Models.SearchResult;
+import Models.TransactionQuery;
+import Enums.TxnType;
+import Repositories.ConcurrentWalletRepository;
+import Services.ReportingService;
+import Services.WalletService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Горячие пути WalletService на кошельках разного размера (без журнала: только память)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class WalletServiceBench {
+    private static final String LOGIN = "bench";
+    private static final LocalDateTime PERIOD_FROM = LocalDateTime.of(2021, 3, 10, 0, 0);
+    private static final LocalDateTime PERIOD_TO = LocalDateTime.of(2023, 7, 20, 0, 0);
+    private static final TransactionQuery NOTE_QUERY = new TransactionQuery("заметка 42",
+            Set.of(WalletGenerator.category(0)), null, null, null, null, null);
+
+    @Param({"1000", "100000", "1000000"})
+    public int transactions;
+
+    private WalletService service;
+    private final ReportingService reporting = new ReportingService();
+    private SplittableRandom rnd;
+    private LocalDateTime now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ConcurrentWalletRepository repo = new ConcurrentWalletRepository();
+        repo.save(WalletGenerator.wallet(LOGIN, transactions, 42));
+        service = new WalletService(repo);
+        rnd = new SplittableRandom(7);
+        now = LocalDateTime.of(2025, 1, 1, 12, 0);
+    }
+
+    // расход с проверкой пересечения порогов бюджета, как в команде expense
+    @Benchmark
+    public List<BudgetEvent> addExpense() {
+        return service.addExpense(LOGIN, WalletGenerator.category(rnd.nextInt(WalletGenerator.CATEGORIES)), 100 + rnd.nextInt(10_000), null, now);
+    }
+
+    // полный список оповещений (команда alerts): O(число бюджетов)
+    @Benchmark
+    public List<String> alerts() {
+        return service.alerts(LOGIN);
+    }
+
+    @Benchmark
+    public Map<String, Long> expenseByCategory() {
+        return service.expenseByCategory(LOGIN);
+    }
+
+    // период с неполными месяцами на краях: полные месяцы из сумм индекса, края — проход по колонкам
+    @Benchmark
+    public Map<String, Long> periodExpenseByCategory() {
+        return service.periodExpenseByCategory(LOGIN, PERIOD_FROM, PERIOD_TO);
+    }
+
+    // слово заметки и категория: ведёт самый короткий список индекса, цена растёт с числом совпадений
+    @Benchmark
+    public SearchResult search() {
+        return service.search(LOGIN, NOTE_QUERY, 20);
+    }
+
+    // три года помесячно по итогам из сумм индекса времени: цена зависит от числа месяцев, а не операций
+    @Benchmark
+    public String monthlyTrend() {
+        return reporting.monthlyTrend(service.rollup(LOGIN), TxnType.EXPENSE, null, YearMonth.of(2022, 1), YearMonth.of(2024, 12));
+    }
+}
@@ -0,0 +1,5 @@
+package Enums;
+
+public enum BudgetEventType {
+    BUDGET_WARNING, BUDGET_EXCEEDED, BALANCE_NEGATIVE, BALANCE_ZERO
+}
@@ -0,0 +1,17 @@
+package Enums;
+
+import java.time.LocalDateTime;
+
+public enum Frequency {
+    DAILY, WEEKLY, MONTHLY, YEARLY;
+
+    // k-е повторение отсчитывается от начала, а не от предыдущего: 31-е число не сползает к 28-му
+    public LocalDateTime occurrence(LocalDateTime start, long k) {
+        return switch (this) {
+            case DAILY -> start.plusDays(k);
+            case WEEKLY -> start.plusWeeks(k);
+            case MONTHLY -> start.plusMonths(k);
+            case YEARLY -> start.plusYears(k);
+        };
+    }
+}
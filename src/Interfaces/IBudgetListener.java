@@ -0,0 +1,9 @@
+package Interfaces;
+
+import Models.BudgetEvent;
+
+// вызывается в потоке, выполнившем операцию, уже после снятия блокировки кошелька
+@FunctionalInterface
+public interface IBudgetListener {
+    void onEvent(BudgetEvent event);
+}
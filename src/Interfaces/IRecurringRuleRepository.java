@@ -0,0 +1,16 @@
+package Interfaces;
+
+import Models.RecurringRule;
+
+import java.util.Collection;
+
+public interface IRecurringRuleRepository {
+    // правила на момент открытия; дальше их состояние ведёт планировщик, а хранилище только дописывает изменения
+    Collection<RecurringRule> loadAll();
+    // номер для нового правила
+    int nextId();
+    void save(RecurringRule rule);
+    void delete(int id);
+    // проведённые повторения пачкой правил: одна запись на диск на весь проход планировщика
+    void saveProgress(Collection<RecurringRule> rules);
+}
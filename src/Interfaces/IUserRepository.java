@@ -2,9 +2,19 @@ package Interfaces;
 
 import Models.User;
 
+import java.util.Collection;
 import java.util.Optional;
 
 public interface IUserRepository {
     Optional<User> findByLogin(String login);
     void save(User user);
+    // все зарегистрированные логины (представление только для чтения)
+    Collection<String> logins();
+
+    // атомарно в потокобезопасных реализациях; false, если логин уже занят
+    default boolean saveIfAbsent(User user) {
+        if (findByLogin(user.getLogin()).isPresent()) return false;
+        save(user);
+        return true;
+    }
 }
@@ -7,4 +7,9 @@ import java.util.Optional;
 public interface IWalletRepository {
     Optional<Wallet> findByOwner(String login);
     void save(Wallet wallet);
+
+    // только кошелёк, уже находящийся в памяти, без загрузки из хранилища
+    default Optional<Wallet> findLoaded(String login) {
+        return findByOwner(login);
+    }
 }
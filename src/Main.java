@@ -1,7 +1,25 @@
 import Services.CommandLoop;
+import Services.FinanceCore;
+import Services.FinanceServer;
+
+import java.nio.file.Paths;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("server")) {
+            FinanceCore core = new FinanceCore();
+            String host = args.length > 2 && args[1].equals("--host") ? args[2] : null;
+            if (args.length > 1 && host == null) throw new IllegalArgumentException("Использование: server [--host адрес]");
+            FinanceServer server = FinanceServer.fromSystemProperties(core, host);
+            // журналы сбрасываются на диск и при остановке процесса сигналом
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> { server.close(); core.close(); }));
+            server.run();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            CommandLoop.batch(args.length > 1 ? Paths.get(args[1]) : null).run();
+            return;
+        }
         new CommandLoop().run();
     }
 }
@@ -0,0 +1,16 @@
+package Models;
+
+import Enums.BudgetEventType;
+
+// Пересечение порога: 80% или 100% лимита категории (amount — расход, limit — лимит)
+// либо переход баланса через ноль (amount — новый баланс, category и limit не заполнены)
+public record BudgetEvent(BudgetEventType type, String login, String category, long amount, long limit) {
+    public String message() {
+        return switch (type) {
+            case BUDGET_WARNING -> "Достигнуто 80% лимита по '" + category + "': " + Money.toString(amount) + "/" + Money.toString(limit);
+            case BUDGET_EXCEEDED -> "Превышен лимит по '" + category + "': " + Money.toString(amount) + "/" + Money.toString(limit);
+            case BALANCE_NEGATIVE -> "Расходы превысили доходы! Текущий баланс: " + Money.toString(amount);
+            case BALANCE_ZERO -> "Баланс нулевой.";
+        };
+    }
+}
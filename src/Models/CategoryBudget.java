@@ -4,16 +4,17 @@ import java.util.Objects;
 
 public class CategoryBudget {
     private final String category;
-    private double limit;
+    // лимит в копейках
+    private long limit;
 
-    public CategoryBudget(String category, double limit) {
+    public CategoryBudget(String category, long limit) {
         this.category = category;
         this.limit = limit;
     }
 
     public String getCategory() { return category; }
-    public double getLimit() { return limit; }
-    public void setLimit(double limit) { this.limit = limit; }
+    public long getLimit() { return limit; }
+    public void setLimit(long limit) { this.limit = limit; }
 
     @Override
     public boolean equals(Object o) {
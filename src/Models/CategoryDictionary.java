@@ -0,0 +1,47 @@
+package Models;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Общий словарь категорий: каждая категория хранится одной строкой, транзакции ссылаются на неё номером.
+// Номера живут только в памяти процесса и в файлы не пишутся (колоночный формат ведёт свой словарь).
+public final class CategoryDictionary {
+    public static final int NONE = -1;
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[64];
+    private static int size;
+
+    private CategoryDictionary() {}
+
+    public static int id(String category) {
+        if (category == null) return NONE;
+        Integer id = ids.get(category);
+        return id != null ? id : register(category);
+    }
+
+    // номер без регистрации: для запросов, чтобы чужой ввод не разрастался в словаре; null — категории нет
+    public static Integer find(String category) {
+        return category == null ? null : ids.get(category);
+    }
+
+    public static String name(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    public static int size() {
+        return ids.size();
+    }
+
+    // имя записывается в массив раньше, чем номер попадает в карту: кто получил номер, видит и имя
+    private static synchronized int register(String category) {
+        Integer id = ids.get(category);
+        if (id != null) return id;
+        String[] arr = names;
+        if (size == arr.length) arr = Arrays.copyOf(arr, size * 2);
+        arr[size] = category;
+        names = arr;
+        ids.put(category, size);
+        return size++;
+    }
+}
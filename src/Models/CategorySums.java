@@ -0,0 +1,86 @@
+package Models;
+
+import Enums.TxnType;
+
+import java.util.Arrays;
+
+// Суммы доходов и расходов по номерам категорий CategoryDictionary (NONE — без категории) в копейках.
+// Маленькая таблица с открытой адресацией: размер растёт с числом категорий самого кошелька за месяц,
+// а не с общим словарём всех пользователей. Обнулившиеся ячейки остаются и пропускаются при обходе.
+final class CategorySums {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys = empty(8);
+    private long[] income = new long[8];
+    private long[] expense = new long[8];
+    private int size;
+
+    interface Visitor {
+        void accept(int category, long income, long expense);
+    }
+
+    void add(int category, TxnType type, long amount) {
+        int i = slot(category);
+        if (type == TxnType.INCOME) income[i] += amount;
+        else expense[i] += amount;
+    }
+
+    void addAll(CategorySums other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            int k = other.keys[i];
+            if (k == EMPTY) continue;
+            int j = slot(k);
+            income[j] += other.income[i];
+            expense[j] += other.expense[i];
+        }
+    }
+
+    void forEach(Visitor v) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && (income[i] != 0 || expense[i] != 0)) v.accept(keys[i], income[i], expense[i]);
+        }
+    }
+
+    // ячейка категории; новая заводится при первом обращении
+    private int slot(int category) {
+        int mask = keys.length - 1;
+        for (int i = hash(category) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == category) return i;
+            if (keys[i] == EMPTY) {
+                if (4 * (size + 1) > 3 * keys.length) {
+                    grow();
+                    return slot(category);
+                }
+                keys[i] = category;
+                size++;
+                return i;
+            }
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        long[] oldIncome = income, oldExpense = expense;
+        keys = empty(oldKeys.length * 2);
+        income = new long[keys.length];
+        expense = new long[keys.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int j = slot(oldKeys[i]);
+            income[j] = oldIncome[i];
+            expense[j] = oldExpense[i];
+        }
+    }
+
+    private static int hash(int category) {
+        int h = category * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] empty(int capacity) {
+        int[] k = new int[capacity];
+        Arrays.fill(k, EMPTY);
+        return k;
+    }
+}
@@ -0,0 +1,10 @@
+package Models;
+
+import java.util.Map;
+
+// Неизменяемая копия кошелька для записи снимка вне блокировки: строки, бюджеты, порядок строк
+// по ключу истории (время, id) и помесячные итоги, снятые в один момент (см. Wallet.freeze)
+public record FrozenWallet(String ownerLogin, TransactionStore store, Map<String, CategoryBudget> budgets,
+                           int[] order, MonthlyRollup rollup) {
+    public int size() { return store.size(); }
+}
@@ -0,0 +1,60 @@
+package Models;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Отбор страницы истории из операций в любом порядке: хранит не больше limit + 1 самых новых операций
+// старше курсора (лишняя показывает, что есть следующая страница). Источник, идущий от новых к старым,
+// может остановиться, как только wants вернул false.
+public final class HistoryCollector {
+    // страница больше не нужна человеку и держала бы в памяти сколько угодно операций
+    public static final int MAX_LIMIT = 1000;
+
+    private record Entry(HistoryCursor key, Transaction t) {}
+
+    private final HistoryFilter filter;
+    private final HistoryCursor after;
+    private final int limit;
+    // самая старая из отобранных — в голове очереди
+    private final PriorityQueue<Entry> kept = new PriorityQueue<>(Comparator.comparing(Entry::key));
+
+    public HistoryCollector(HistoryFilter filter, HistoryCursor after, int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) throw new IllegalArgumentException("Число операций на странице — от 1 до " + MAX_LIMIT);
+        this.filter = filter;
+        this.after = after;
+        this.limit = limit;
+    }
+
+    public HistoryFilter filter() { return filter; }
+
+    // операция с таким ключом старше курсора, то есть идёт на этой или следующих страницах
+    public boolean pastCursor(long second, int nano, long idHi, long idLo) {
+        return after == null || after.isOlder(second, nano, idHi, idLo);
+    }
+
+    // нужна ли операция с таким ключом: старше курсора и, если отобрано уже с запасом, новее самой старой
+    public boolean wants(long second, int nano, long idHi, long idLo) {
+        if (!pastCursor(second, nano, idHi, idLo)) return false;
+        if (kept.size() <= limit) return true;
+        HistoryCursor oldest = kept.peek().key();
+        return HistoryCursor.compare(second, nano, idHi, idLo, oldest.second(), oldest.nano(), oldest.idHi(), oldest.idLo()) > 0;
+    }
+
+    public void offer(Transaction t) {
+        if (!filter.matches(t.getType(), t.getCategory())) return;
+        HistoryCursor key = HistoryCursor.of(t);
+        if (!wants(key.second(), key.nano(), key.idHi(), key.idLo())) return;
+        kept.add(new Entry(key, t));
+        if (kept.size() > limit + 1) kept.poll();
+    }
+
+    public HistoryPage page() {
+        List<Entry> all = new ArrayList<>(kept);
+        all.sort(Comparator.comparing(Entry::key).reversed());
+        List<Transaction> txns = new ArrayList<>(Math.min(limit, all.size()));
+        for (int i = 0; i < all.size() && i < limit; i++) txns.add(all.get(i).t());
+        return new HistoryPage(txns, all.size() > limit ? all.get(limit - 1).key() : null);
+    }
+}
@@ -0,0 +1,70 @@
+package Models;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+// Позиция в истории операций — ключ последней выданной операции. История идёт от новых операций к старым
+// по (время, id), поэтому курсор не сбивается, если между страницами добавились операции, и одинаково
+// понимается кошельком в памяти и файлом снимка (колоночный снимок упорядочен по тому же ключу).
+public record HistoryCursor(long second, int nano, long idHi, long idLo) implements Comparable<HistoryCursor> {
+
+    public static HistoryCursor of(Transaction t) {
+        if (t.hasUuid()) return new HistoryCursor(t.epochSecond(), t.nano(), t.idHi(), t.idLo());
+        UUID id = idKey(t.getId());
+        return new HistoryCursor(t.epochSecond(), t.nano(), id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public static HistoryCursor of(TransactionStore store, int row) {
+        if (store.hasUuid(row)) return new HistoryCursor(store.epochSecond(row), store.nano(row), store.idHi(row), store.idLo(row));
+        UUID id = idKey(store.id(row));
+        return new HistoryCursor(store.epochSecond(row), store.nano(row), id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    // id не в формате UUID упорядочивается так, как его записывает колоночный файл
+    public static UUID idKey(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return UUID.nameUUIDFromBytes(id.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // true — операция с таким ключом старше курсора, то есть идёт на следующих страницах
+    public boolean isOlder(long second, int nano, long idHi, long idLo) {
+        return compare(second, nano, idHi, idLo, this.second, this.nano, this.idHi, this.idLo) < 0;
+    }
+
+    @Override
+    public int compareTo(HistoryCursor o) {
+        return compare(second, nano, idHi, idLo, o.second, o.nano, o.idHi, o.idLo);
+    }
+
+    public static int compare(long s1, int n1, long hi1, long lo1, long s2, int n2, long hi2, long lo2) {
+        int c = Long.compare(s1, s2);
+        if (c == 0) c = Integer.compare(n1, n2);
+        if (c == 0) c = Long.compare(hi1, hi2);
+        return c != 0 ? c : Long.compare(lo1, lo2);
+    }
+
+    // для командной строки: четыре числа в base36 через точку
+    public String encode() {
+        return Long.toUnsignedString(second, 36) + "." + Integer.toUnsignedString(nano, 36) + "."
+                + Long.toUnsignedString(idHi, 36) + "." + Long.toUnsignedString(idLo, 36);
+    }
+
+    public static HistoryCursor decode(String s) {
+        String[] p = s.split("\\.", -1);
+        try {
+            if (p.length != 4) throw new NumberFormatException();
+            HistoryCursor c = new HistoryCursor(Long.parseUnsignedLong(p[0], 36), Integer.parseUnsignedInt(p[1], 36),
+                    Long.parseUnsignedLong(p[2], 36), Long.parseUnsignedLong(p[3], 36));
+            LocalDateTime.ofEpochSecond(c.second, c.nano, ZoneOffset.UTC);
+            return c;
+        } catch (NumberFormatException | DateTimeException e) {
+            throw new IllegalArgumentException("Некорректный курсор: " + s);
+        }
+    }
+}
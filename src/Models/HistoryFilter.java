@@ -0,0 +1,23 @@
+package Models;
+
+import Enums.TxnType;
+
+import java.util.Set;
+
+// Условия просмотра истории: тип (null — любой) и категории (пусто — любые; Wallet.NO_CATEGORY —
+// операции без категории)
+public record HistoryFilter(TxnType type, Set<String> categories) {
+    public static final HistoryFilter ALL = new HistoryFilter(null, Set.of());
+
+    public HistoryFilter {
+        categories = categories == null ? Set.of() : Set.copyOf(categories);
+    }
+
+    public boolean matches(TxnType t, String category) {
+        return (type == null || type == t) && acceptsCategory(category);
+    }
+
+    public boolean acceptsCategory(String category) {
+        return categories.isEmpty() || categories.contains(category == null ? Wallet.NO_CATEGORY : category);
+    }
+}
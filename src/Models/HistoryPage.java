@@ -0,0 +1,6 @@
+package Models;
+
+import java.util.List;
+
+// Страница истории от новых операций к старым; next == null — дальше операций нет
+public record HistoryPage(List<Transaction> transactions, HistoryCursor next) {}
@@ -0,0 +1,7 @@
+package Models;
+
+// Докуда журнал кошелька уже учтён в снимке: поколения журнала младше generation — целиком,
+// поколение generation — первые offset байт файла. Снимок без отметки (старый формат) — NONE
+public record JournalMark(long generation, long offset) {
+    public static final JournalMark NONE = new JournalMark(0, 0);
+}
@@ -0,0 +1,83 @@
+package Models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Денежные суммы хранятся в копейках (long): сложение точное, без накопления ошибки double
+public final class Money {
+    public static final int SCALE = 100;
+
+    private Money() {}
+
+    // "12", "12.3", "12,34", "-5.00" -> копейки; более двух знаков после запятой округляются half-up
+    public static long parse(CharSequence s) {
+        int n = s.length();
+        if (n == 0) throw new NumberFormatException("Пустая сумма");
+        int i = 0;
+        boolean negative = false;
+        char c0 = s.charAt(0);
+        if (c0 == '-' || c0 == '+') { negative = c0 == '-'; i++; }
+        long units = 0;
+        int digits = 0;
+        while (i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            if (++digits > 16) return parseSlow(s);
+            units = units * 10 + (s.charAt(i++) - '0');
+        }
+        long frac = 0;
+        int fracDigits = 0;
+        if (i < n && (s.charAt(i) == '.' || s.charAt(i) == ',')) {
+            i++;
+            while (i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                if (fracDigits == 2) return parseSlow(s);
+                frac = frac * 10 + (s.charAt(i++) - '0');
+                fracDigits++;
+            }
+        }
+        if (i != n) return parseSlow(s);
+        if (digits == 0 && fracDigits == 0) throw new NumberFormatException("Некорректная сумма: " + s);
+        if (fracDigits == 1) frac *= 10;
+        long v = units * SCALE + frac;
+        return negative ? -v : v;
+    }
+
+    public static long ofDouble(double v) {
+        return Math.round(v * SCALE);
+    }
+
+    public static double toDouble(long minor) {
+        return minor / (double) SCALE;
+    }
+
+    // точная запись с двумя знаками после точки: 123456 -> "1234.56"
+    public static String toString(long minor) {
+        StringBuilder sb = new StringBuilder(24);
+        append(sb, minor);
+        return sb.toString();
+    }
+
+    // формат отчётов: с разделителями разрядов и одним знаком после запятой
+    public static String format(long minor) {
+        return String.format("%,.1f", toDouble(minor));
+    }
+
+    public static void append(StringBuilder sb, long minor) {
+        if (minor < 0) {
+            sb.append('-');
+            if (minor == Long.MIN_VALUE) { sb.append(new BigDecimal(minor).negate().movePointLeft(2).toPlainString()); return; }
+            minor = -minor;
+        }
+        long frac = minor % SCALE;
+        sb.append(minor / SCALE).append('.');
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+
+    private static long parseSlow(CharSequence s) {
+        try {
+            return new BigDecimal(s.toString().replace(',', '.'))
+                    .setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Слишком большая сумма: " + s);
+        }
+    }
+}
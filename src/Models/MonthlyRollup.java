@@ -0,0 +1,67 @@
+package Models;
+
+import Enums.TxnType;
+
+import java.time.YearMonth;
+import java.util.*;
+
+// Помесячные итоги кошелька: (месяц, категория) -> суммы доходов и расходов в копейках.
+// Отчёты по месяцам (динамика, сравнение с прошлым годом, скользящее среднее) читают только их,
+// без прохода по операциям. Операция без категории учитывается под Wallet.NO_CATEGORY.
+public class MonthlyRollup {
+    private final TreeMap<YearMonth, Map<String, long[]>> months = new TreeMap<>();
+
+    // отрицательная сумма вычитает ранее учтённую операцию
+    public void add(YearMonth month, TxnType type, String category, long amount) {
+        Map<String, long[]> cats = months.computeIfAbsent(month, k -> new HashMap<>());
+        String key = category == null ? Wallet.NO_CATEGORY : category;
+        long[] sums = cats.computeIfAbsent(key, k -> new long[2]);
+        sums[type == TxnType.INCOME ? 0 : 1] += amount;
+        if (sums[0] == 0 && sums[1] == 0) {
+            cats.remove(key);
+            if (cats.isEmpty()) months.remove(month);
+        }
+    }
+
+    public boolean isEmpty() { return months.isEmpty(); }
+
+    public YearMonth first() { return months.isEmpty() ? null : months.firstKey(); }
+
+    public YearMonth last() { return months.isEmpty() ? null : months.lastKey(); }
+
+    public NavigableSet<YearMonth> months() {
+        return Collections.unmodifiableNavigableSet(months.navigableKeySet());
+    }
+
+    public long total(YearMonth month, TxnType type) {
+        Map<String, long[]> cats = months.get(month);
+        if (cats == null) return 0;
+        int k = type == TxnType.INCOME ? 0 : 1;
+        long sum = 0;
+        for (long[] s : cats.values()) sum += s[k];
+        return sum;
+    }
+
+    // category == null — по всем категориям
+    public long amount(YearMonth month, TxnType type, String category) {
+        if (category == null) return total(month, type);
+        Map<String, long[]> cats = months.get(month);
+        long[] s = cats == null ? null : cats.get(category);
+        return s == null ? 0 : s[type == TxnType.INCOME ? 0 : 1];
+    }
+
+    public Map<String, Long> byCategory(YearMonth month, TxnType type) {
+        Map<String, long[]> cats = months.get(month);
+        if (cats == null) return Map.of();
+        int k = type == TxnType.INCOME ? 0 : 1;
+        Map<String, Long> res = new HashMap<>();
+        cats.forEach((c, s) -> { if (s[k] != 0) res.put(c, s[k]); });
+        return res;
+    }
+
+    // категории, по которым в месяце были операции любого типа
+    public Set<String> categories(YearMonth month) {
+        Map<String, long[]> cats = months.get(month);
+        return cats == null ? Set.of() : Collections.unmodifiableSet(cats.keySet());
+    }
+}
@@ -0,0 +1,79 @@
+package Models;
+
+import Enums.Frequency;
+import Enums.TxnType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+// Правило повторяющейся операции: с момента start каждые frequency в кошелёк login добавляется операция.
+// posted — сколько повторений уже проведено; следующее — повторение с номером posted.
+// Изменяемое состояние (posted, срок в очереди) меняет только поток планировщика, пока правила нет в очереди;
+// список правил читает его без блокировки.
+public class RecurringRule {
+    private final int id;
+    private final String login;
+    private final TxnType type;
+    private final String category;
+    private final long amount;
+    private final String note;
+    private final Frequency frequency;
+    // начало хранится примитивами, как время в TransactionStore: правил могут быть сотни тысяч
+    private final long startSecond;
+    private final int startNano;
+    private volatile int posted;
+    // срок в очереди планировщика, секунды эпохи: обычно время следующего повторения, после ошибки — время повтора
+    private volatile long due;
+
+    public RecurringRule(int id, String login, TxnType type, String category, long amount, String note,
+                         Frequency frequency, LocalDateTime start, int posted) {
+        this.id = id;
+        this.login = login;
+        this.type = type;
+        this.category = category;
+        this.amount = amount;
+        this.note = note;
+        this.frequency = frequency;
+        this.startSecond = epochSecond(start);
+        this.startNano = start.getNano();
+        this.posted = posted;
+        this.due = epochSecond(next());
+    }
+
+    public int getId() { return id; }
+    public String getLogin() { return login; }
+    public TxnType getType() { return type; }
+    public String getCategory() { return category; }
+    public long getAmount() { return amount; }
+    public String getNote() { return note; }
+    public Frequency getFrequency() { return frequency; }
+    public LocalDateTime getStart() { return LocalDateTime.ofEpochSecond(startSecond, startNano, ZoneOffset.UTC); }
+    public int getPosted() { return posted; }
+    public long due() { return due; }
+
+    public LocalDateTime next() {
+        return frequency.occurrence(getStart(), posted);
+    }
+
+    // операция k-го повторения; id выводится из номера правила и повторения, так что повтор после сбоя узнаваем
+    public Transaction occurrence(int k) {
+        UUID id = UUID.nameUUIDFromBytes(("recurring:" + this.id + ":" + k).getBytes(StandardCharsets.UTF_8));
+        return new Transaction(id.getMostSignificantBits(), id.getLeastSignificantBits(), type, category, amount, note,
+                frequency.occurrence(getStart(), k));
+    }
+
+    public void advance(int count) {
+        posted += count;
+        due = epochSecond(next());
+    }
+
+    public void retryAt(long second) {
+        due = second;
+    }
+
+    public static long epochSecond(LocalDateTime at) {
+        return at.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,225 @@
+package Models;
+
+import Enums.TxnType;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+// Инвертированный индекс кошелька: для каждого слова заметок и каждой категории — возрастающий список
+// номеров строк TransactionStore. Запрос начинается с самого короткого списка, сверяет его строки с остальными
+// двоичным поиском, а тип, сумму и время проверяет по колонкам хранилища, так что его цена растёт с числом
+// совпадений, а не с размером кошелька. Без слов и категорий кандидатов даёт индекс времени (если задан период),
+// иначе — проход по колонкам.
+public class SearchIndex {
+    // слова короче не индексируются: предлоги и одиночные буквы только раздували бы списки
+    private static final int MIN_WORD = 2;
+
+    private final TransactionStore store;
+    private final TimeIndex timeIndex;
+    // TreeMap: поиск по префиксу — подкарта, а не обход всего словаря
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    // категорий в кошельке немного: номера в общем словаре ищутся линейно, без массива на весь словарь
+    private int[] categoryIds = new int[4];
+    private Postings[] categoryRows = new Postings[4];
+    private int categoryCount;
+
+    private static final class Postings {
+        int[] rows = new int[2];
+        int size;
+
+        Postings() {}
+
+        Postings(int[] rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row) return;
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+
+        void remove(int row) {
+            int k = Arrays.binarySearch(rows, 0, size, row);
+            if (k < 0) return;
+            System.arraycopy(rows, k + 1, rows, k, size - k - 1);
+            size--;
+        }
+
+        // после удаления строки номера выше неё уменьшаются; порядок сохраняется
+        void shift(int removed) {
+            int k = Arrays.binarySearch(rows, 0, size, removed);
+            for (int i = k < 0 ? -k - 1 : k; i < size; i++) rows[i]--;
+        }
+
+        boolean contains(int row) {
+            return Arrays.binarySearch(rows, 0, size, row) >= 0;
+        }
+    }
+
+    public SearchIndex(TransactionStore store, TimeIndex timeIndex) {
+        this.store = store;
+        this.timeIndex = timeIndex;
+    }
+
+    public void add(int row) {
+        category(store.categoryId(row), true).add(row);
+        String note = store.note(row);
+        if (note != null) forEachWord(note, (w, prefix) -> words.computeIfAbsent(w, k -> new Postings()).add(row));
+    }
+
+    // вызывается до удаления строки из хранилища, как и TimeIndex.remove
+    public void remove(int row) {
+        Postings cat = category(store.categoryId(row), false);
+        if (cat != null) cat.remove(row);
+        String note = store.note(row);
+        if (note != null) {
+            forEachWord(note, (w, prefix) -> {
+                Postings p = words.get(w);
+                if (p == null) return;
+                p.remove(row);
+                if (p.size == 0) words.remove(w);
+            });
+        }
+        if (row == store.size() - 1) return;
+        for (Postings p : words.values()) p.shift(row);
+        for (int i = 0; i < categoryCount; i++) categoryRows[i].shift(row);
+    }
+
+    // номера подходящих строк в порядке времени
+    public int[] search(TransactionQuery q) {
+        List<Postings> terms = new ArrayList<>();
+        if (q.text() != null) {
+            List<Postings> text = new ArrayList<>();
+            forEachWord(q.text(), (w, prefix) -> text.add(prefix ? prefixed(w) : words.get(w)));
+            if (text.isEmpty()) throw new IllegalArgumentException("В запросе нет слов длиной от " + MIN_WORD + " символов");
+            for (Postings p : text) {
+                if (p == null || p.size == 0) return new int[0];
+                terms.add(p);
+            }
+        }
+        if (!q.categories().isEmpty()) {
+            Postings p = categories(q.categories());
+            if (p.size == 0) return new int[0];
+            terms.add(p);
+        }
+
+        terms.sort(Comparator.comparingInt(p -> p.size));
+        boolean period = q.from() != null || q.to() != null;
+        LocalDateTime from = q.from() == null ? LocalDateTime.MIN : q.from();
+        LocalDateTime to = q.to() == null ? LocalDateTime.MAX : q.to();
+        // ведущий список — самый короткий из списков слов и категорий; строки периода сверяются с ними двоичным
+        // поиском, а не проверкой колонки, поэтому период ведёт, только если он заметно короче
+        boolean timeOrdered = period && (terms.isEmpty() || (long) timeIndex.count(from, to) * 8 < terms.get(0).size);
+        int[] candidates;
+        int n, firstTerm;
+        if (timeOrdered) {
+            candidates = timeIndex.between(from, to);
+            n = candidates.length;
+            firstTerm = 0;
+        } else if (!terms.isEmpty()) {
+            candidates = terms.get(0).rows;
+            n = terms.get(0).size;
+            firstTerm = 1;
+        } else {
+            candidates = null;
+            n = store.size();
+            firstTerm = 0;
+        }
+
+        boolean checkTime = period && !timeOrdered;
+        long fromSecond = from.toEpochSecond(ZoneOffset.UTC), toSecond = to.toEpochSecond(ZoneOffset.UTC);
+        int fromNano = from.getNano(), toNano = to.getNano();
+        boolean anyType = q.type() == null;
+        boolean income = q.type() == TxnType.INCOME;
+        long min = q.minAmount() == null ? Long.MIN_VALUE : q.minAmount();
+        long max = q.maxAmount() == null ? Long.MAX_VALUE : q.maxAmount();
+        int[] res = new int[Math.min(n, 16)];
+        int found = 0;
+        for (int k = 0; k < n; k++) {
+            int row = candidates == null ? k : candidates[k];
+            if (!anyType && store.isIncome(row) != income) continue;
+            long amount = store.amount(row);
+            if (amount < min || amount > max) continue;
+            if (checkTime && (store.isBefore(row, fromSecond, fromNano) || !store.isBefore(row, toSecond, toNano))) continue;
+            if (!inAll(terms, firstTerm, row)) continue;
+            if (found == res.length) res = Arrays.copyOf(res, Math.max(16, found * 2));
+            res[found++] = row;
+        }
+        // строки добавляются почти всегда по времени; операции задним числом досортировываются
+        if (!timeOrdered) TimeIndex.sort(store, res, found);
+        return Arrays.copyOf(res, found);
+    }
+
+    private static boolean inAll(List<Postings> terms, int from, int row) {
+        for (int i = from; i < terms.size(); i++) if (!terms.get(i).contains(row)) return false;
+        return true;
+    }
+
+    // объединение списков всех слов с заданным началом
+    private Postings prefixed(String prefix) {
+        Collection<Postings> lists = words.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+        return union(lists);
+    }
+
+    private Postings categories(Set<String> names) {
+        List<Postings> lists = new ArrayList<>();
+        for (String name : names) {
+            // «Без категории» — операции без категории; номер в словаре не регистрируется ради запроса
+            if (name.equals(Wallet.NO_CATEGORY)) add(lists, category(CategoryDictionary.NONE, false));
+            Integer id = CategoryDictionary.find(name);
+            if (id != null) add(lists, category(id, false));
+        }
+        return union(lists);
+    }
+
+    private static void add(List<Postings> lists, Postings p) {
+        if (p != null && p.size > 0) lists.add(p);
+    }
+
+    private static Postings union(Collection<Postings> lists) {
+        if (lists.isEmpty()) return new Postings();
+        if (lists.size() == 1) return lists.iterator().next();
+        int total = 0;
+        for (Postings p : lists) total += p.size;
+        int[] all = new int[total];
+        int k = 0;
+        for (Postings p : lists) {
+            System.arraycopy(p.rows, 0, all, k, p.size);
+            k += p.size;
+        }
+        Arrays.sort(all);
+        int n = 0;
+        for (int i = 0; i < total; i++) if (n == 0 || all[n - 1] != all[i]) all[n++] = all[i];
+        return new Postings(all, n);
+    }
+
+    private Postings category(int id, boolean create) {
+        for (int i = 0; i < categoryCount; i++) if (categoryIds[i] == id) return categoryRows[i];
+        if (!create) return null;
+        if (categoryCount == categoryIds.length) {
+            categoryIds = Arrays.copyOf(categoryIds, categoryCount * 2);
+            categoryRows = Arrays.copyOf(categoryRows, categoryCount * 2);
+        }
+        categoryIds[categoryCount] = id;
+        return categoryRows[categoryCount++] = new Postings();
+    }
+
+    private interface WordSink {
+        void accept(String word, boolean prefix);
+    }
+
+    // слова — последовательности букв и цифр в нижнем регистре; * сразу после слова делает его префиксом
+    private static void forEachWord(String text, WordSink sink) {
+        int n = text.length();
+        for (int i = 0; i < n; ) {
+            while (i < n && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            int start = i;
+            while (i < n && Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i - start < MIN_WORD) continue;
+            sink.accept(text.substring(start, i).toLowerCase(Locale.ROOT), i < n && text.charAt(i) == '*');
+        }
+    }
+}
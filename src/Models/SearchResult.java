@@ -0,0 +1,7 @@
+package Models;
+
+import java.util.List;
+
+// Итог поиска: число совпадений и их суммы (в копейках) по всем найденным операциям,
+// сами операции — только последние, новые первыми
+public record SearchResult(int matches, long income, long expense, List<Transaction> latest) {}
@@ -0,0 +1,284 @@
+package Models;
+
+import Enums.TxnType;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+// Индекс транзакций по времени: помесячные корзины с готовыми суммами (в копейках).
+// Запрос за период стоит O(log n + число затронутых месяцев): полные месяцы берутся из сумм корзины,
+// в крайних месяцах границы ищутся двоичным поиском по отсортированному списку.
+// Вставка всегда O(1): транзакция задним числом лишь помечает корзину, и та досортировывается при первом запросе.
+// Корзина хранит номера строк TransactionStore, суммы по категориям — маленькой таблицей CategorySums.
+public class TimeIndex {
+    private final TransactionStore store;
+    private final TreeMap<YearMonth, Bucket> buckets = new TreeMap<>();
+    // корзина последней вставки: операции обычно идут подряд в одном месяце (и при загрузке снимка,
+    // упорядоченного по времени), тогда месяц не вычисляется заново
+    private Bucket last;
+
+    private static final class Bucket {
+        final LocalDateTime start;
+        final LocalDateTime end;
+        final long startSecond;
+        final long endSecond;
+        private int[] rows = new int[8];
+        private int size;
+        private boolean sorted = true;
+        long income;
+        long expense;
+        final CategorySums byCategory = new CategorySums();
+
+        Bucket(YearMonth month) {
+            this.start = month.atDay(1).atStartOfDay();
+            this.end = month.plusMonths(1).atDay(1).atStartOfDay();
+            this.startSecond = start.toEpochSecond(ZoneOffset.UTC);
+            this.endSecond = end.toEpochSecond(ZoneOffset.UTC);
+        }
+
+        boolean holds(long second) { return second >= startSecond && second < endSecond; }
+
+        // сортировку могут запросить несколько читателей под общей блокировкой чтения
+        synchronized int[] rows(TransactionStore store) {
+            if (!sorted) {
+                sort(store, rows, size);
+                sorted = true;
+            }
+            return rows;
+        }
+
+        void add(int row) {
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+
+        long total(TxnType type) { return type == TxnType.INCOME ? income : expense; }
+    }
+
+    public TimeIndex(TransactionStore store) {
+        this.store = store;
+    }
+
+    public void add(int row) {
+        Bucket b = last != null && last.holds(store.epochSecond(row)) ? last : buckets.computeIfAbsent(month(row), Bucket::new);
+        last = b;
+        if (b.size > 0 && store.compareTime(b.rows[b.size - 1], row) > 0) b.sorted = false;
+        b.add(row);
+        long amount = store.amount(row);
+        TxnType type = store.type(row);
+        if (type == TxnType.INCOME) b.income += amount;
+        else b.expense += amount;
+        b.byCategory.add(store.categoryId(row), type, amount);
+    }
+
+    // вызывается до удаления строки из хранилища; номера строк после неё сдвигаются на единицу
+    public void remove(int row) {
+        YearMonth month = month(row);
+        Bucket b = buckets.get(month);
+        if (b == null) return;
+        int k = 0;
+        while (k < b.size && b.rows[k] != row) k++;
+        if (k == b.size) return;
+        System.arraycopy(b.rows, k + 1, b.rows, k, b.size - k - 1);
+        b.size--;
+        long amount = store.amount(row);
+        TxnType type = store.type(row);
+        if (type == TxnType.INCOME) b.income -= amount;
+        else b.expense -= amount;
+        b.byCategory.add(store.categoryId(row), type, -amount);
+        if (b.size == 0) {
+            buckets.remove(month);
+            if (last == b) last = null;
+        }
+        if (row == store.size() - 1) return;
+        for (Bucket other : buckets.values()) {
+            for (int i = 0; i < other.size; i++) if (other.rows[i] > row) other.rows[i]--;
+        }
+    }
+
+    // сумма по типу за [from, to)
+    public long total(TxnType type, LocalDateTime from, LocalDateTime to) {
+        long sum = 0;
+        for (Bucket b : touched(from, to)) {
+            if (covers(b, from, to)) {
+                sum += b.total(type);
+                continue;
+            }
+            int[] rows = b.rows(store);
+            sum += store.sum(type, rows, lowerBound(rows, b.size, from), lowerBound(rows, b.size, to));
+        }
+        return sum;
+    }
+
+    // суммы по категориям для типа за [from, to)
+    public Map<String, Long> byCategory(TxnType type, LocalDateTime from, LocalDateTime to) {
+        CategorySums acc = new CategorySums();
+        for (Bucket b : touched(from, to)) {
+            if (covers(b, from, to)) {
+                acc.addAll(b.byCategory);
+                continue;
+            }
+            int[] rows = b.rows(store);
+            store.sumByCategory(type, rows, lowerBound(rows, b.size, from), lowerBound(rows, b.size, to), acc);
+        }
+        Map<String, Long> res = new HashMap<>();
+        acc.forEach((category, income, expense) -> {
+            long sum = type == TxnType.INCOME ? income : expense;
+            if (sum != 0) res.put(category == CategoryDictionary.NONE ? Wallet.NO_CATEGORY : CategoryDictionary.name(category), sum);
+        });
+        return res;
+    }
+
+    // помесячные итоги прямо из сумм корзин: корзины и есть итоги, которые ведутся при каждой вставке
+    public MonthlyRollup rollup() {
+        MonthlyRollup r = new MonthlyRollup();
+        for (var e : buckets.entrySet()) {
+            e.getValue().byCategory.forEach((category, income, expense) -> {
+                String name = CategoryDictionary.name(category);
+                if (income != 0) r.add(e.getKey(), TxnType.INCOME, name, income);
+                if (expense != 0) r.add(e.getKey(), TxnType.EXPENSE, name, expense);
+            });
+        }
+        return r;
+    }
+
+    // число строк за [from, to): полные месяцы — по размеру корзины, крайние — двоичным поиском
+    public int count(LocalDateTime from, LocalDateTime to) {
+        int n = 0;
+        for (Bucket b : touched(from, to)) {
+            if (covers(b, from, to)) {
+                n += b.size;
+                continue;
+            }
+            int[] rows = b.rows(store);
+            n += lowerBound(rows, b.size, to) - lowerBound(rows, b.size, from);
+        }
+        return n;
+    }
+
+    // номера строк за [from, to) в порядке времени
+    public int[] between(LocalDateTime from, LocalDateTime to) {
+        int[] res = new int[16];
+        int n = 0;
+        for (Bucket b : touched(from, to)) {
+            int[] rows = b.rows(store);
+            int lo = lowerBound(rows, b.size, from), hi = lowerBound(rows, b.size, to);
+            if (n + hi - lo > res.length) res = Arrays.copyOf(res, Math.max(res.length * 2, n + hi - lo));
+            System.arraycopy(rows, lo, res, n, hi - lo);
+            n += hi - lo;
+        }
+        return Arrays.copyOf(res, n);
+    }
+
+    // до count строк от новых к старым: старше курсора (null — с самой новой) и прошедших keep.
+    // Обход идёт по корзинам с конца и останавливается на count-й строке, а не проходит весь кошелёк
+    public int[] newest(HistoryCursor after, IntPredicate keep, int count) {
+        int[] res = new int[Math.min(count, 64)];
+        int n = 0;
+        Collection<Bucket> order = after == null ? buckets.descendingMap().values()
+                : buckets.headMap(YearMonth.from(LocalDateTime.ofEpochSecond(after.second(), after.nano(), ZoneOffset.UTC)), true)
+                        .descendingMap().values();
+        for (Bucket b : order) {
+            int[] rows = b.rows(store);
+            // в месяце курсора — сразу с последней строки не новее его времени
+            int hi = (after == null ? b.size : lowerBound(rows, b.size, after.second(), after.nano() + 1)) - 1;
+            while (hi >= 0) {
+                int lo = hi;
+                while (lo > 0 && store.compareTime(rows[lo - 1], rows[hi]) == 0) lo--;
+                int[] run = lo == hi ? null : byId(Arrays.copyOfRange(rows, lo, hi + 1));
+                for (int k = hi; k >= lo; k--) {
+                    int row = run == null ? rows[k] : run[k - lo];
+                    if (after != null && !after.isOlder(store.epochSecond(row), store.nano(row), keyHi(row), keyLo(row))) continue;
+                    if (!keep.test(row)) continue;
+                    if (n == res.length) res = Arrays.copyOf(res, Math.min(count, n * 2));
+                    res[n++] = row;
+                    if (n == count) return res;
+                }
+                hi = lo - 1;
+            }
+        }
+        return Arrays.copyOf(res, n);
+    }
+
+    // все строки по ключу истории (время, id) — в этом порядке пишется колоночный снимок
+    public int[] ordered() {
+        int[] res = new int[store.size()];
+        int n = 0;
+        for (Bucket b : buckets.values()) {
+            System.arraycopy(b.rows(store), 0, res, n, b.size);
+            n += b.size;
+        }
+        for (int lo = 0; lo < n; ) {
+            int hi = lo;
+            while (hi + 1 < n && store.compareTime(res[hi + 1], res[lo]) == 0) hi++;
+            if (hi > lo) System.arraycopy(byId(Arrays.copyOfRange(res, lo, hi + 1)), 0, res, lo, hi - lo + 1);
+            lo = hi + 1;
+        }
+        return res;
+    }
+
+    // строки с одинаковым временем — по id; такие группы редки и малы
+    private int[] byId(int[] run) {
+        Integer[] boxed = new Integer[run.length];
+        for (int i = 0; i < run.length; i++) boxed[i] = run[i];
+        Arrays.sort(boxed, (a, b) -> HistoryCursor.compare(0, 0, keyHi(a), keyLo(a), 0, 0, keyHi(b), keyLo(b)));
+        for (int i = 0; i < run.length; i++) run[i] = boxed[i];
+        return run;
+    }
+
+    private long keyHi(int row) {
+        return store.hasUuid(row) ? store.idHi(row) : HistoryCursor.idKey(store.id(row)).getMostSignificantBits();
+    }
+
+    private long keyLo(int row) {
+        return store.hasUuid(row) ? store.idLo(row) : HistoryCursor.idKey(store.id(row)).getLeastSignificantBits();
+    }
+
+    private YearMonth month(int row) {
+        return YearMonth.from(store.at(row));
+    }
+
+    private Collection<Bucket> touched(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) return List.of();
+        return buckets.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values();
+    }
+
+    private static boolean covers(Bucket b, LocalDateTime from, LocalDateTime to) {
+        return !from.isAfter(b.start) && !to.isBefore(b.end);
+    }
+
+    // первая позиция с временем >= key
+    private int lowerBound(int[] rows, int size, LocalDateTime key) {
+        return lowerBound(rows, size, key.toEpochSecond(ZoneOffset.UTC), key.getNano());
+    }
+
+    // nano может быть 1_000_000_000: «сразу после» секунды
+    private int lowerBound(int[] rows, int size, long second, int nano) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (store.isBefore(rows[mid], second, nano)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // устойчивая сортировка слиянием номеров строк по времени, без упаковки в Integer
+    static void sort(TransactionStore store, int[] rows, int size) {
+        int[] tmp = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int lo = 0; lo < size - width; lo += 2 * width) {
+                int mid = lo + width, hi = Math.min(lo + 2 * width, size);
+                if (store.compareTime(rows[mid - 1], rows[mid]) <= 0) continue;
+                System.arraycopy(rows, lo, tmp, lo, hi - lo);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) rows[k++] = store.compareTime(tmp[j], tmp[i]) < 0 ? tmp[j++] : tmp[i++];
+                while (i < mid) rows[k++] = tmp[i++];
+                while (j < hi) rows[k++] = tmp[j++];
+            }
+        }
+    }
+}
@@ -3,29 +3,116 @@ package Models;
 import Enums.TxnType;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
+// Идентификатор хранится двумя long (UUID), категория — номером в CategoryDictionary, время — секундами
+// и наносекундами; строки и LocalDateTime для getId/getCategory/getAt строятся по запросу.
 public class Transaction {
-    private final String id;
+    private final long idHi;
+    private final long idLo;
+    // идентификатор не в формате UUID (например, из импортированного CSV) хранится как есть
+    private final String customId;
     private final TxnType type;
-    private final String category;
-    private final double amount;
+    private final int categoryId;
+    // сумма в копейках
+    private final long amount;
     private final String note;
-    private final LocalDateTime at;
+    // локальное время без зоны, закодированное как UTC
+    private final long epochSecond;
+    private final int nano;
 
-    public Transaction(TxnType type, String category, double amount, String note, LocalDateTime at) {
-        this.id = UUID.randomUUID().toString();
+    public Transaction(TxnType type, String category, long amount, String note, LocalDateTime at) {
+        this(randomHi(), randomLo(), type, category, amount, note, at);
+    }
+
+    public Transaction(String id, TxnType type, String category, long amount, String note, LocalDateTime at) {
+        long[] uuid = parseUuid(id);
+        this.idHi = uuid == null ? 0 : uuid[0];
+        this.idLo = uuid == null ? 0 : uuid[1];
+        this.customId = uuid == null ? id : null;
+        this.type = type;
+        this.categoryId = CategoryDictionary.id(category);
+        this.amount = amount;
+        this.note = note;
+        this.epochSecond = at == null ? Long.MIN_VALUE : at.toEpochSecond(ZoneOffset.UTC);
+        this.nano = at == null ? 0 : at.getNano();
+    }
+
+    public Transaction(long idHi, long idLo, TxnType type, String category, long amount, String note, LocalDateTime at) {
+        this.idHi = idHi;
+        this.idLo = idLo;
+        this.customId = null;
+        this.type = type;
+        this.categoryId = CategoryDictionary.id(category);
+        this.amount = amount;
+        this.note = note;
+        this.epochSecond = at == null ? Long.MIN_VALUE : at.toEpochSecond(ZoneOffset.UTC);
+        this.nano = at == null ? 0 : at.getNano();
+    }
+
+    // сборка из строки TransactionStore
+    Transaction(long idHi, long idLo, String customId, TxnType type, int categoryId, long amount, String note,
+                long epochSecond, int nano) {
+        this.idHi = idHi;
+        this.idLo = idLo;
+        this.customId = customId;
         this.type = type;
-        this.category = category;
+        this.categoryId = categoryId;
         this.amount = amount;
         this.note = note;
-        this.at = at;
+        this.epochSecond = epochSecond;
+        this.nano = nano;
     }
 
-    public String getId() { return id; }
+    public String getId() { return customId != null ? customId : new UUID(idHi, idLo).toString(); }
     public TxnType getType() { return type; }
-    public String getCategory() { return category; }
-    public double getAmount() { return amount; }
+    public String getCategory() { return CategoryDictionary.name(categoryId); }
+    public int getCategoryId() { return categoryId; }
+    public long getAmount() { return amount; }
     public String getNote() { return note; }
-    public LocalDateTime getAt() { return at; }
+    public LocalDateTime getAt() {
+        return epochSecond == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+    public long epochSecond() { return epochSecond; }
+    public int nano() { return nano; }
+
+    // порядок по времени без построения LocalDateTime
+    public int compareTime(Transaction o) {
+        int c = Long.compare(epochSecond, o.epochSecond);
+        return c != 0 ? c : Integer.compare(nano, o.nano);
+    }
+
+    public boolean hasUuid() { return customId == null; }
+    public long idHi() { return idHi; }
+    public long idLo() { return idLo; }
+
+    // случайный UUID версии 4 без SecureRandom: идентификатор уникален, но не секретен
+    private static long randomHi() {
+        return (ThreadLocalRandom.current().nextLong() & ~0xF000L) | 0x4000L;
+    }
+
+    private static long randomLo() {
+        return (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+    }
+
+    // только каноническая запись 8-4-4-4-12, иначе null: "1-2-3-4-5" остаётся строковым идентификатором
+    private static long[] parseUuid(String s) {
+        if (s == null || s.length() != 36) return null;
+        long hi = 0, lo = 0;
+        int digits = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return null;
+                continue;
+            }
+            int d = Character.digit(c, 16);
+            if (d < 0) return null;
+            if (digits++ < 16) hi = hi << 4 | d;
+            else lo = lo << 4 | d;
+        }
+        return new long[] {hi, lo};
+    }
 }
@@ -0,0 +1,25 @@
+package Models;
+
+import Enums.TxnType;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+// Условия поиска операций кошелька; незаданное условие (null или пустое множество) выборку не ограничивает.
+// text — слова заметки, все должны встретиться; слово со * на конце ищется как префикс.
+// Суммы в копейках, включительно; период [from, to).
+public record TransactionQuery(String text, Set<String> categories, TxnType type, Long minAmount, Long maxAmount,
+                               LocalDateTime from, LocalDateTime to) {
+    public static final TransactionQuery ALL = new TransactionQuery(null, Set.of(), null, null, null, null, null);
+
+    public TransactionQuery {
+        categories = categories == null ? Set.of() : Set.copyOf(categories);
+        if (text != null && text.isBlank()) text = null;
+        if (minAmount != null && maxAmount != null && minAmount > maxAmount) {
+            throw new IllegalArgumentException("Минимальная сумма больше максимальной");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("Начало периода должно быть раньше конца");
+        }
+    }
+}
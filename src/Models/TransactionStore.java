@@ -0,0 +1,239 @@
+package Models;
+
+import Enums.TxnType;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+
+// Транзакции кошелька в виде параллельных массивов примитивов (struct-of-arrays), по строке на операцию.
+// Агрегаты и индексы проходят по массивам без создания объектов; Transaction собирается только по запросу.
+// Заметки и нестандартные id редки, их массивы заводятся при первом появлении.
+// Изменения — под блокировкой записи кошелька, чтение — под блокировкой чтения.
+public final class TransactionStore {
+    static final byte INCOME = 0, EXPENSE = 1;
+
+    private byte[] types = new byte[16];
+    private long[] amounts = new long[16];
+    private long[] seconds = new long[16];
+    private int[] nanos = new int[16];
+    private int[] categories = new int[16];
+    private long[] idHi = new long[16];
+    private long[] idLo = new long[16];
+    private String[] notes;
+    private String[] customIds;
+    private int size;
+
+    public int size() { return size; }
+
+    // хранилище поверх готовых колонок (загрузка снимка): массивы одной длины не короче size переходят
+    // во владение хранилища; types — коды INCOME/EXPENSE, notes и customIds — null, если таких строк нет
+    public static TransactionStore of(int size, byte[] types, long[] amounts, long[] seconds, int[] nanos, int[] categories,
+                                      long[] idHi, long[] idLo, String[] notes, String[] customIds) {
+        int cap = types.length;
+        if (cap < Math.max(size, 1) || amounts.length != cap || seconds.length != cap || nanos.length != cap
+                || categories.length != cap || idHi.length != cap || idLo.length != cap
+                || notes != null && notes.length != cap || customIds != null && customIds.length != cap) {
+            throw new IllegalArgumentException("Колонки разной длины или короче числа строк");
+        }
+        TransactionStore s = new TransactionStore();
+        s.types = types;
+        s.amounts = amounts;
+        s.seconds = seconds;
+        s.nanos = nanos;
+        s.categories = categories;
+        s.idHi = idHi;
+        s.idLo = idLo;
+        s.notes = notes;
+        s.customIds = customIds;
+        s.size = size;
+        return s;
+    }
+
+    int add(Transaction t) {
+        if (size == types.length) grow();
+        int row = size++;
+        types[row] = code(t.getType());
+        amounts[row] = t.getAmount();
+        seconds[row] = t.epochSecond();
+        nanos[row] = t.nano();
+        categories[row] = t.getCategoryId();
+        idHi[row] = t.idHi();
+        idLo[row] = t.idLo();
+        if (t.getNote() != null) {
+            if (notes == null) notes = new String[types.length];
+            notes[row] = t.getNote();
+        } else if (notes != null) {
+            notes[row] = null;
+        }
+        if (!t.hasUuid()) {
+            if (customIds == null) customIds = new String[types.length];
+            customIds[row] = t.getId();
+        } else if (customIds != null) {
+            customIds[row] = null;
+        }
+        return row;
+    }
+
+    // сдвиг хвоста: удаление редкое (откат перевода, запись X в журнале)
+    void remove(int row) {
+        int tail = size - row - 1;
+        System.arraycopy(types, row + 1, types, row, tail);
+        System.arraycopy(amounts, row + 1, amounts, row, tail);
+        System.arraycopy(seconds, row + 1, seconds, row, tail);
+        System.arraycopy(nanos, row + 1, nanos, row, tail);
+        System.arraycopy(categories, row + 1, categories, row, tail);
+        System.arraycopy(idHi, row + 1, idHi, row, tail);
+        System.arraycopy(idLo, row + 1, idLo, row, tail);
+        if (notes != null) {
+            System.arraycopy(notes, row + 1, notes, row, tail);
+            notes[size - 1] = null;
+        }
+        if (customIds != null) {
+            System.arraycopy(customIds, row + 1, customIds, row, tail);
+            customIds[size - 1] = null;
+        }
+        size--;
+    }
+
+    // копия строк: массивы копируются целиком, строки заметок и id неизменяемы и делятся
+    TransactionStore copy() {
+        TransactionStore c = new TransactionStore();
+        int cap = Math.max(size, 16);
+        c.types = Arrays.copyOf(types, cap);
+        c.amounts = Arrays.copyOf(amounts, cap);
+        c.seconds = Arrays.copyOf(seconds, cap);
+        c.nanos = Arrays.copyOf(nanos, cap);
+        c.categories = Arrays.copyOf(categories, cap);
+        c.idHi = Arrays.copyOf(idHi, cap);
+        c.idLo = Arrays.copyOf(idLo, cap);
+        if (notes != null) c.notes = Arrays.copyOf(notes, cap);
+        if (customIds != null) c.customIds = Arrays.copyOf(customIds, cap);
+        c.size = size;
+        return c;
+    }
+
+    // копия выбранных строк в порядке rows, плотно с нулевой строки
+    TransactionStore copy(int[] rows) {
+        TransactionStore c = new TransactionStore();
+        int cap = Math.max(rows.length, 16);
+        c.types = new byte[cap];
+        c.amounts = new long[cap];
+        c.seconds = new long[cap];
+        c.nanos = new int[cap];
+        c.categories = new int[cap];
+        c.idHi = new long[cap];
+        c.idLo = new long[cap];
+        if (notes != null) c.notes = new String[cap];
+        if (customIds != null) c.customIds = new String[cap];
+        for (int k = 0; k < rows.length; k++) {
+            int i = rows[k];
+            check(i);
+            c.types[k] = types[i];
+            c.amounts[k] = amounts[i];
+            c.seconds[k] = seconds[i];
+            c.nanos[k] = nanos[i];
+            c.categories[k] = categories[i];
+            c.idHi[k] = idHi[i];
+            c.idLo[k] = idLo[i];
+            if (notes != null) c.notes[k] = notes[i];
+            if (customIds != null) c.customIds[k] = customIds[i];
+        }
+        c.size = rows.length;
+        return c;
+    }
+
+    // последняя строка с тем же идентификатором, что у t, или -1
+    int lastIndexOf(Transaction t) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (t.hasUuid() ? customId(i) == null && idHi[i] == t.idHi() && idLo[i] == t.idLo()
+                            : t.getId().equals(customId(i))) return i;
+        }
+        return -1;
+    }
+
+    public Transaction get(int row) {
+        check(row);
+        return new Transaction(idHi[row], idLo[row], customId(row), type(row), categories[row],
+                amounts[row], note(row), seconds[row], nanos[row]);
+    }
+
+    public TxnType type(int row) { return types[row] == INCOME ? TxnType.INCOME : TxnType.EXPENSE; }
+    public boolean isIncome(int row) { return types[row] == INCOME; }
+    public long amount(int row) { return amounts[row]; }
+    public long epochSecond(int row) { return seconds[row]; }
+    public int nano(int row) { return nanos[row]; }
+    public int categoryId(int row) { return categories[row]; }
+    public String category(int row) { return CategoryDictionary.name(categories[row]); }
+    public String note(int row) { return notes == null ? null : notes[row]; }
+    public long idHi(int row) { return idHi[row]; }
+    public long idLo(int row) { return idLo[row]; }
+    public boolean hasUuid(int row) { return customId(row) == null; }
+
+    public String id(int row) {
+        String custom = customId(row);
+        return custom != null ? custom : new UUID(idHi[row], idLo[row]).toString();
+    }
+
+    public LocalDateTime at(int row) {
+        return LocalDateTime.ofEpochSecond(seconds[row], nanos[row], ZoneOffset.UTC);
+    }
+
+    public int compareTime(int a, int b) {
+        int c = Long.compare(seconds[a], seconds[b]);
+        return c != 0 ? c : Integer.compare(nanos[a], nanos[b]);
+    }
+
+    // строка раньше момента (second, nano)
+    public boolean isBefore(int row, long second, int nano) {
+        return seconds[row] < second || seconds[row] == second && nanos[row] < nano;
+    }
+
+    // сумма по типу за все строки: один проход по двум массивам без ветвлений
+    public long sum(TxnType type) {
+        long mask = code(type), sum = 0;
+        for (int i = 0; i < size; i++) sum += amounts[i] & ((types[i] ^ mask) - 1 >> 63);
+        return sum;
+    }
+
+    // сумма по типу для выбранных строк rows[from, to)
+    public long sum(TxnType type, int[] rows, int from, int to) {
+        long mask = code(type), sum = 0;
+        for (int k = from; k < to; k++) {
+            int i = rows[k];
+            sum += amounts[i] & ((types[i] ^ mask) - 1 >> 63);
+        }
+        return sum;
+    }
+
+    // суммы по категориям для выбранных строк rows[from, to) добавляются в acc
+    void sumByCategory(TxnType type, int[] rows, int from, int to, CategorySums acc) {
+        byte code = code(type);
+        for (int k = from; k < to; k++) {
+            int i = rows[k];
+            if (types[i] == code) acc.add(categories[i], type, amounts[i]);
+        }
+    }
+
+    static byte code(TxnType type) { return type == TxnType.INCOME ? INCOME : EXPENSE; }
+
+    private String customId(int row) { return customIds == null ? null : customIds[row]; }
+
+    private void check(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Строка " + row + " вне диапазона 0.." + size);
+    }
+
+    private void grow() {
+        int cap = Math.max(16, types.length + (types.length >> 1));
+        types = Arrays.copyOf(types, cap);
+        amounts = Arrays.copyOf(amounts, cap);
+        seconds = Arrays.copyOf(seconds, cap);
+        nanos = Arrays.copyOf(nanos, cap);
+        categories = Arrays.copyOf(categories, cap);
+        idHi = Arrays.copyOf(idHi, cap);
+        idLo = Arrays.copyOf(idLo, cap);
+        if (notes != null) notes = Arrays.copyOf(notes, cap);
+        if (customIds != null) customIds = Arrays.copyOf(customIds, cap);
+    }
+}
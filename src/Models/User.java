@@ -1,8 +1,18 @@
 package Models;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.regex.Pattern;
 
 public class User {
+    // логин входит в имена файлов data/<login>.*: буквы любого алфавита, цифры, «_», «.», «-», до 64 символов,
+    // не с точки; разделители путей, пробелы и управляющие символы исключены самим набором.
+    // Комбинируемые знаки (\p{M}) — для букв, набранных в разложенном виде (NFD)
+    private static final Pattern LOGIN = Pattern.compile("[\\p{L}\\p{N}_-][\\p{L}\\p{M}\\p{N}_.-]{0,63}");
+    // имя файла ограничено 255 байтами; с самым длинным суффиксом (.journal.broken-<время>, временные файлы)
+    // запас остаётся, даже если все символы логина четырёхбайтовые
+    private static final int MAX_LOGIN_BYTES = 192;
+
     private final String login;
     private final String passwordHash;
     private final byte[] salt;
@@ -13,6 +23,11 @@ public class User {
         this.salt = salt;
     }
 
+    public static boolean isValidLogin(String login) {
+        return login != null && LOGIN.matcher(login).matches()
+                && login.getBytes(StandardCharsets.UTF_8).length <= MAX_LOGIN_BYTES;
+    }
+
     public String getLogin() { return login; }
     public String getPasswordHash() { return passwordHash; }
     public byte[] getSalt() { return salt; }
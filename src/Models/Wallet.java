@@ -3,29 +3,150 @@ package Models;
 import Enums.TxnType;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Wallet {
+    public static final String NO_CATEGORY = "Без категории";
+
     private final String ownerLogin;
-    private final List<Transaction> transactions = new ArrayList<>();
+    private final TransactionStore transactions;
     private final Map<String, CategoryBudget> budgets = new HashMap<>();
 
+    // агрегаты в копейках обновляются в addTransaction, чтобы отчёты не сканировали весь список;
+    // счётчики читаются без блокировок и без дрейфа округления
+    private final LongAdder totalIncome = new LongAdder();
+    private final LongAdder totalExpense = new LongAdder();
+    private final Map<String, LongAdder> incomeByCategory = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> expenseByCategory = new ConcurrentHashMap<>();
+    private final TimeIndex timeIndex;
+    private final SearchIndex searchIndex;
+
     public Wallet(String ownerLogin) {
+        this(ownerLogin, new TransactionStore());
+    }
+
+    private Wallet(String ownerLogin, TransactionStore transactions) {
         this.ownerLogin = ownerLogin;
+        this.transactions = transactions;
+        this.timeIndex = new TimeIndex(transactions);
+        this.searchIndex = new SearchIndex(transactions, timeIndex);
+    }
+
+    // кошелёк поверх готовых колонок (загрузка снимка): индексы и суммы строятся одним проходом по строкам,
+    // без Transaction на строку; суммы по категориям копятся по номерам и переводятся в имена один раз
+    public static Wallet of(String ownerLogin, TransactionStore transactions) {
+        Wallet w = new Wallet(ownerLogin, transactions);
+        CategorySums sums = new CategorySums();
+        for (int row = 0; row < transactions.size(); row++) {
+            w.timeIndex.add(row);
+            w.searchIndex.add(row);
+            sums.add(transactions.categoryId(row), transactions.type(row), transactions.amount(row));
+        }
+        sums.forEach((category, income, expense) -> {
+            String cat = category == CategoryDictionary.NONE ? NO_CATEGORY : CategoryDictionary.name(category);
+            if (income != 0) {
+                w.totalIncome.add(income);
+                w.incomeByCategory.computeIfAbsent(cat, k -> new LongAdder()).add(income);
+            }
+            if (expense != 0) {
+                w.totalExpense.add(expense);
+                w.expenseByCategory.computeIfAbsent(cat, k -> new LongAdder()).add(expense);
+            }
+        });
+        return w;
     }
 
     public String getOwnerLogin() { return ownerLogin; }
-    public List<Transaction> getTransactions() { return Collections.unmodifiableList(transactions); }
+    // представление для совместимости: каждая транзакция собирается из строки хранилища при обращении;
+    // горячие пути читают store() напрямую
+    public List<Transaction> getTransactions() {
+        return new AbstractList<>() {
+            @Override public Transaction get(int i) { return transactions.get(i); }
+            @Override public int size() { return transactions.size(); }
+        };
+    }
+    public TransactionStore store() { return transactions; }
+    public int size() { return transactions.size(); }
     public Map<String, CategoryBudget> getBudgets() { return Collections.unmodifiableMap(budgets); }
 
-    public void addTransaction(Transaction t) { transactions.add(t); }
-    public void setBudget(String category, double limit) { budgets.put(category, new CategoryBudget(category, limit)); }
-    public void editBudget(String category, double limit) {
+    public void addTransaction(Transaction t) {
+        int row = transactions.add(t);
+        timeIndex.add(row);
+        searchIndex.add(row);
+        String cat = t.getCategory() == null ? NO_CATEGORY : t.getCategory();
+        if (t.getType() == TxnType.INCOME) {
+            totalIncome.add(t.getAmount());
+            incomeByCategory.computeIfAbsent(cat, k -> new LongAdder()).add(t.getAmount());
+        } else {
+            totalExpense.add(t.getAmount());
+            expenseByCategory.computeIfAbsent(cat, k -> new LongAdder()).add(t.getAmount());
+        }
+    }
+    // откат только что добавленной транзакции (например, списания при неудавшемся переводе)
+    public boolean removeTransaction(Transaction t) {
+        int i = transactions.lastIndexOf(t);
+        if (i < 0) return false;
+        timeIndex.remove(i);
+        searchIndex.remove(i);
+        transactions.remove(i);
+        String cat = t.getCategory() == null ? NO_CATEGORY : t.getCategory();
+        if (t.getType() == TxnType.INCOME) {
+            totalIncome.add(-t.getAmount());
+            subtract(incomeByCategory, cat, t.getAmount());
+        } else {
+            totalExpense.add(-t.getAmount());
+            subtract(expenseByCategory, cat, t.getAmount());
+        }
+        return true;
+    }
+
+    public Optional<Transaction> findTransaction(String id) {
+        // id разбирается один раз, дальше сравниваются два long
+        int i = transactions.lastIndexOf(new Transaction(id, TxnType.INCOME, null, 0, null, null));
+        return i < 0 ? Optional.empty() : Optional.of(transactions.get(i));
+    }
+
+    public void setBudget(String category, long limit) { budgets.put(category, new CategoryBudget(category, limit)); }
+    public void editBudget(String category, long limit) {
         budgets.compute(category, (k, v) -> v == null ? new CategoryBudget(category, limit) : new CategoryBudget(category, limit));
     }
 
-    public double balance() {
-        double income = transactions.stream().filter(t -> t.getType()== TxnType.INCOME).mapToDouble(Transaction::getAmount).sum();
-        double expense = transactions.stream().filter(t -> t.getType()==TxnType.EXPENSE).mapToDouble(Transaction::getAmount).sum();
-        return income - expense;
+    public long totalIncome() { return totalIncome.sum(); }
+    public long totalExpense() { return totalExpense.sum(); }
+    public Map<String, Long> incomeByCategory() { return snapshot(incomeByCategory); }
+    public Map<String, Long> expenseByCategory() { return snapshot(expenseByCategory); }
+    public long expenseOf(String category) {
+        LongAdder a = expenseByCategory.get(category);
+        return a == null ? 0 : a.sum();
+    }
+    // копия для записи снимка без блокировки: вызывающий не даёт менять кошелёк только на время копирования
+    public FrozenWallet freeze() {
+        return new FrozenWallet(ownerLogin, transactions.copy(), Map.copyOf(budgets), timeIndex.ordered(), timeIndex.rollup());
+    }
+
+    // копия выбранных строк (например, для экспорта): вызывающий держит блокировку только на время копирования
+    public TransactionStore copyRows(int[] rows) {
+        return transactions.copy(rows);
+    }
+
+    public TimeIndex timeIndex() { return timeIndex; }
+    public SearchIndex searchIndex() { return searchIndex; }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> map) {
+        Map<String, Long> res = new HashMap<>();
+        map.forEach((k, v) -> res.put(k, v.sum()));
+        return res;
+    }
+
+    private static void subtract(Map<String, LongAdder> map, String key, long amount) {
+        LongAdder a = map.get(key);
+        if (a == null) return;
+        a.add(-amount);
+        if (a.sum() == 0) map.remove(key);
+    }
+
+    public long balance() {
+        return totalIncome.sum() - totalExpense.sum();
     }
 }
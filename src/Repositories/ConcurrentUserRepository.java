@@ -0,0 +1,34 @@
+package Repositories;
+
+import Interfaces.IUserRepository;
+import Models.User;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ConcurrentUserRepository implements IUserRepository {
+    private final Map<String, User> map = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<User> findByLogin(String login) {
+        return Optional.ofNullable(map.get(login));
+    }
+
+    @Override
+    public Collection<String> logins() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
+    @Override
+    public void save(User user) {
+        map.put(user.getLogin(), user);
+    }
+
+    @Override
+    public boolean saveIfAbsent(User user) {
+        return map.putIfAbsent(user.getLogin(), user) == null;
+    }
+}
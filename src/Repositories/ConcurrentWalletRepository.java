@@ -0,0 +1,24 @@
+package Repositories;
+
+import Interfaces.IWalletRepository;
+import Models.Wallet;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ConcurrentWalletRepository implements IWalletRepository {
+    private final Map<String, Wallet> map = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<Wallet> findByOwner(String login) {
+        return Optional.ofNullable(map.get(login));
+    }
+
+    @Override
+    public void save(Wallet wallet) {
+        map.put(wallet.getOwnerLogin(), wallet);
+    }
+
+    public Map<String, Wallet> internal() { return map; }
+}
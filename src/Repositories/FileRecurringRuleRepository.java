@@ -0,0 +1,166 @@
+package Repositories;
+
+import Enums.Frequency;
+import Enums.TxnType;
+import Interfaces.IRecurringRuleRepository;
+import Models.CategoryDictionary;
+import Models.RecurringRule;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Правила повторяющихся операций в data/recurring.db, файл только дописывается:
+//   R<TAB>id<TAB>login<TAB>тип<TAB>категория<TAB>сумма(копейки)<TAB>частота<TAB>начало<TAB>проведено<TAB>заметка
+//   P<TAB>id<TAB>проведено   — продвижение правила
+//   D<TAB>id                 — удаление
+//   N<TAB>id                 — последний выданный номер (после переписывания, когда правила с ним может уже не быть)
+// При чтении побеждает последняя строка правила. Если строк накопилось намного больше, чем живых правил,
+// файл при открытии переписывается одними строками R. После загрузки правила в памяти держит только планировщик.
+public class FileRecurringRuleRepository implements IRecurringRuleRepository {
+    private static final int COMPACT_SLACK = 1000;
+
+    private final Path file;
+    private Map<Integer, RecurringRule> rules = new HashMap<>();
+    private int lastId;
+    private FileChannel ch;
+    private Writer out;
+
+    public FileRecurringRuleRepository(Path file) {
+        this.file = file;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            int lines = Files.exists(file) ? load() : 0;
+            if (lines > 2 * rules.size() + COMPACT_SLACK) rewrite();
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            out = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка открытия файла правил: " + e.getMessage(), e);
+        }
+    }
+
+    // отдаётся один раз: второй копии сотен тысяч правил в памяти не остаётся
+    @Override
+    public synchronized Collection<RecurringRule> loadAll() {
+        if (rules == null) throw new IllegalStateException("Правила уже загружены");
+        Collection<RecurringRule> res = new ArrayList<>(rules.values());
+        rules = null;
+        return res;
+    }
+
+    @Override
+    public synchronized int nextId() {
+        return ++lastId;
+    }
+
+    // новое правило и удаление подтверждаются после fsync, как регистрация пользователя
+    @Override
+    public synchronized void save(RecurringRule r) {
+        try {
+            writeRule(out, r);
+            sync();
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка записи файла правил: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void delete(int id) {
+        try {
+            out.write("D\t" + id + "\n");
+            sync();
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка записи файла правил: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void saveProgress(Collection<RecurringRule> progressed) {
+        try {
+            // продвижение удалённого правила безвредно: при чтении строка P без правила пропускается
+            for (RecurringRule r : progressed) {
+                out.write("P\t" + r.getId() + "\t" + r.getPosted() + "\n");
+            }
+            sync();
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка записи файла правил: " + e.getMessage(), e);
+        }
+    }
+
+    private void sync() throws IOException {
+        out.flush();
+        ch.force(false);
+    }
+
+    private int load() throws IOException {
+        int lines = 0;
+        // у пользователя обычно несколько правил: логин хранится одной строкой на все
+        Map<String, String> logins = new HashMap<>();
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines++;
+                String[] f = line.split("\t", -1);
+                try {
+                    switch (f[0]) {
+                        case "R" -> {
+                            RecurringRule r = new RecurringRule(Integer.parseInt(f[1]), logins.computeIfAbsent(f[2], k -> k),
+                                    TxnType.valueOf(f[3]), CategoryDictionary.name(CategoryDictionary.id(f[4])),
+                                    Long.parseLong(f[5]), f[9].isEmpty() ? null : f[9], Frequency.valueOf(f[6]),
+                                    LocalDateTime.parse(f[7]), Integer.parseInt(f[8]));
+                            rules.put(r.getId(), r);
+                            lastId = Math.max(lastId, r.getId());
+                        }
+                        case "P" -> {
+                            RecurringRule r = rules.get(Integer.parseInt(f[1]));
+                            if (r != null) r.advance(Integer.parseInt(f[2]) - r.getPosted());
+                        }
+                        case "D" -> rules.remove(Integer.parseInt(f[1]));
+                        case "N" -> lastId = Math.max(lastId, Integer.parseInt(f[1]));
+                        default -> {}
+                    }
+                } catch (RuntimeException ignored) {
+                    // оборванная строка после сбоя пропускается
+                }
+            }
+        }
+        return lines;
+    }
+
+    private void rewrite() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel tc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer w = new BufferedWriter(Channels.newWriter(tc, StandardCharsets.UTF_8))) {
+            // номера не переиспользуются: по номеру правила строятся id его операций
+            w.write("N\t" + lastId + "\n");
+            for (RecurringRule r : rules.values()) writeRule(w, r);
+            w.flush();
+            tc.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRule(Writer w, RecurringRule r) throws IOException {
+        w.write("R\t" + r.getId() + "\t" + r.getLogin() + "\t" + r.getType().name() + "\t" + clean(r.getCategory())
+                + "\t" + r.getAmount() + "\t" + r.getFrequency().name() + "\t" + r.getStart() + "\t" + r.getPosted()
+                + "\t" + (r.getNote() == null ? "" : clean(r.getNote())) + "\n");
+    }
+
+    // разделители формата не должны попасть в поля
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,98 @@
+package Repositories;
+
+import Interfaces.IUserRepository;
+import Models.User;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Пользователи в файле data/users.db: по строке "login<TAB>hash<TAB>salt(base64)" на запись.
+// Файл только дописывается, при чтении побеждает последняя строка логина; в памяти — ConcurrentHashMap.
+public class FileUserRepository implements IUserRepository {
+    private final Map<String, User> map = new ConcurrentHashMap<>();
+    private final FileChannel ch;
+    private final Writer out;
+
+    public FileUserRepository(Path file) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            if (Files.exists(file)) load(file);
+            ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            out = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка открытия файла пользователей: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<User> findByLogin(String login) {
+        return Optional.ofNullable(map.get(login));
+    }
+
+    @Override
+    public Collection<String> logins() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
+    @Override
+    public void save(User user) {
+        map.put(user.getLogin(), user);
+        append(user);
+    }
+
+    @Override
+    public boolean saveIfAbsent(User user) {
+        if (map.putIfAbsent(user.getLogin(), user) != null) return false;
+        try {
+            append(user);
+        } catch (RuntimeException e) {
+            map.remove(user.getLogin(), user);
+            throw e;
+        }
+        return true;
+    }
+
+    // регистрация подтверждается только после fsync: пользователь не пропадёт при сбое
+    private synchronized void append(User u) {
+        try {
+            out.write(u.getLogin());
+            out.write('\t');
+            out.write(u.getPasswordHash());
+            out.write('\t');
+            out.write(Base64.getEncoder().encodeToString(u.getSalt()));
+            out.write('\n');
+            out.flush();
+            ch.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка записи файла пользователей: " + e.getMessage(), e);
+        }
+    }
+
+    private void load(Path file) throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] f = line.split("\t");
+                // оборванная строка после сбоя пропускается
+                if (f.length != 3) continue;
+                try {
+                    map.put(f[0], new User(f[0], f[1], Base64.getDecoder().decode(f[2])));
+                } catch (IllegalArgumentException ignored) {}
+            }
+        }
+    }
+}
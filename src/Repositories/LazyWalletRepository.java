@@ -0,0 +1,183 @@
+package Repositories;
+
+import Interfaces.IWalletRepository;
+import Models.Wallet;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Кошельки в памяти только пока нужны: загружаются при первом findByOwner, а при превышении
+// лимита по числу кошельков или оценке памяти давно не использованные записываются и выгружаются.
+// Выгрузка идёт в фоновом потоке: findByOwner вызывают под блокировкой полосы, и запись чужих снимков
+// не должна её задерживать. Фоновый поток берёт блокировку записи кошелька, занятые кошельки пропускаются;
+// кошелёк, загрузка которого вызвала выгрузку, не выгружается ею.
+public class LazyWalletRepository implements IWalletRepository, AutoCloseable {
+    // грубая оценка памяти: строка колонок TransactionStore с запасом роста массивов, номер строки
+    // в индексе времени и в списке категории индекса поиска, плюс накладные расходы кошелька
+    private static final long BYTES_PER_TXN = 84;
+    private static final long BYTES_PER_WALLET = 2048;
+    // полный пересчёт оценки памяти не чаще раза в секунду
+    private static final long MEMORY_CHECK_NANOS = 1_000_000_000L;
+
+    private final Map<String, Entry> map = new ConcurrentHashMap<>();
+    private final Function<String, Optional<Wallet>> loader;
+    private final Predicate<Wallet> writeBack;
+    private final Function<String, Lock> lockFor;
+    private final int maxWallets;
+    private final long maxBytes;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final ExecutorService evictor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "wallet-evict");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long nextMemoryCheck = System.nanoTime();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final Wallet wallet;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(Wallet wallet) { this.wallet = wallet; }
+    }
+
+    public LazyWalletRepository(Function<String, Optional<Wallet>> loader, Predicate<Wallet> writeBack,
+                                Function<String, Lock> lockFor, int maxWallets, long maxBytes) {
+        if (maxWallets < 1 || maxBytes < 1) throw new IllegalArgumentException("Некорректный лимит кэша кошельков");
+        this.loader = loader;
+        this.writeBack = writeBack;
+        this.lockFor = lockFor;
+        this.maxWallets = maxWallets;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public Optional<Wallet> findByOwner(String login) {
+        Entry e = map.get(login);
+        if (e != null) {
+            e.lastAccess = System.nanoTime();
+            return Optional.of(e.wallet);
+        }
+        Optional<Wallet> loaded = loader.apply(login);
+        if (loaded.isEmpty()) return loaded;
+        loads.increment();
+        Entry winner = map.computeIfAbsent(login, k -> new Entry(loaded.get()));
+        evictIfNeeded(login);
+        return Optional.of(winner.wallet);
+    }
+
+    @Override
+    public Optional<Wallet> findLoaded(String login) {
+        Entry e = map.get(login);
+        if (e == null) return Optional.empty();
+        e.lastAccess = System.nanoTime();
+        return Optional.of(e.wallet);
+    }
+
+    @Override
+    public void save(Wallet wallet) {
+        Entry e = map.get(wallet.getOwnerLogin());
+        if (e != null && e.wallet == wallet) {
+            e.lastAccess = System.nanoTime();
+            return;
+        }
+        map.put(wallet.getOwnerLogin(), new Entry(wallet));
+        evictIfNeeded(wallet.getOwnerLogin());
+    }
+
+    public int resident() { return map.size(); }
+    public long loads() { return loads.sum(); }
+    public long evictions() { return evictions.sum(); }
+
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Entry e : map.values()) bytes += estimate(e.wallet);
+        return bytes;
+    }
+
+    // ждёт начатую выгрузку; после закрытия кэш больше не выгружает
+    @Override
+    public void close() {
+        evictor.shutdown();
+        try {
+            evictor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // keep — только что загруженный или сохранённый кошелёк, его выгрузка сразу вызовет повторную загрузку
+    private void evictIfNeeded(String keep) {
+        if (map.size() <= maxWallets) {
+            long now = System.nanoTime();
+            if (now - nextMemoryCheck < 0) return;
+            nextMemoryCheck = now + MEMORY_CHECK_NANOS;
+            if (estimatedBytes() <= maxBytes) return;
+        }
+        // одновременно выгрузку ведёт один поток, остальные не ждут
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            evictor.execute(() -> {
+                try {
+                    evictOldest(keep);
+                } finally {
+                    evicting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            evicting.set(false);
+        }
+    }
+
+    private void evictOldest(String keep) {
+        // выгрузка с запасом до 90% лимитов, чтобы сортировка не повторялась на каждой загрузке
+        long countTarget = maxWallets - maxWallets / 10;
+        long bytesTarget = maxBytes - maxBytes / 10;
+        List<Map.Entry<String, Entry>> byAge = new ArrayList<>(map.entrySet());
+        byAge.sort(Comparator.comparingLong(en -> en.getValue().lastAccess));
+        long bytes = estimatedBytes();
+        int count = map.size();
+        for (Map.Entry<String, Entry> en : byAge) {
+            if (count <= countTarget && bytes <= bytesTarget) break;
+            if (en.getKey().equals(keep)) continue;
+            long size = estimate(en.getValue().wallet);
+            if (evict(en.getKey())) {
+                count--;
+                bytes -= size;
+            }
+        }
+    }
+
+    private boolean evict(String login) {
+        Lock lock = lockFor.apply(login);
+        if (!lock.tryLock()) return false;
+        try {
+            Entry e = map.get(login);
+            if (e == null) return false;
+            if (!writeBack.test(e.wallet)) return false;
+            map.remove(login, e);
+            evictions.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long estimate(Wallet w) {
+        return BYTES_PER_WALLET + BYTES_PER_TXN * w.size();
+    }
+}
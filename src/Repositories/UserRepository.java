@@ -4,6 +4,8 @@ import Interfaces.IUserRepository;
 import Models.User;
 
 import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 
@@ -15,6 +17,11 @@ public class UserRepository implements IUserRepository {
         return Optional.ofNullable(map.get(login));
     }
 
+    @Override
+    public Collection<String> logins() {
+        return Collections.unmodifiableSet(map.keySet());
+    }
+
     @Override
     public void save(User user) {
         map.put(user.getLogin(), user);
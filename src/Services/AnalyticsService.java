@@ -0,0 +1,152 @@
+package Services;
+
+import Interfaces.IUserRepository;
+import Models.CategoryDictionary;
+import Models.Wallet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Сводные показатели по всем кошелькам: сколько денег в системе, крупнейшие категории расходов,
+// пользователи с превышенным бюджетом. Вклад каждого кошелька кэшируется; пересчитываются только кошельки,
+// изменённые с прошлого отчёта, и новые пользователи. Пересчёт идёт параллельно: каждый поток копит
+// свою частичную разницу, разницы сливаются в конце и применяются к кэшу без общей блокировки на кошелёк.
+public class AnalyticsService {
+    public record CategoryTotal(String category, long amount) {}
+
+    public record Report(int wallets, long totalIncome, long totalExpense, List<CategoryTotal> categories,
+                         List<String> overBudget, int recomputed, double refreshMs) {
+        public long totalBalance() { return totalIncome - totalExpense; }
+    }
+
+    // вклад одного кошелька; расходы по категориям — номера общего словаря и суммы
+    private record Figures(long income, long expense, int[] categories, long[] expenses, boolean overBudget) {
+        static final Figures EMPTY = new Figures(0, 0, new int[0], new long[0], false);
+    }
+
+    // частичный итог одного потока: новые вклады и разница к общим суммам
+    private final class Delta {
+        final Map<String, Figures> updated = new HashMap<>();
+        long income;
+        long expense;
+        long[] categories = new long[0];
+        final Set<String> overAdded = new HashSet<>();
+        final Set<String> overRemoved = new HashSet<>();
+
+        void add(String login, Figures now) {
+            Figures before = figures.getOrDefault(login, Figures.EMPTY);
+            updated.put(login, now);
+            income += now.income - before.income;
+            expense += now.expense - before.expense;
+            apply(before, -1);
+            apply(now, 1);
+            if (now.overBudget && !before.overBudget) overAdded.add(login);
+            if (!now.overBudget && before.overBudget) overRemoved.add(login);
+        }
+
+        private void apply(Figures f, int sign) {
+            for (int i = 0; i < f.categories.length; i++) {
+                categories = ensure(categories, f.categories[i]);
+                categories[f.categories[i]] += sign * f.expenses[i];
+            }
+        }
+
+        Delta merge(Delta o) {
+            updated.putAll(o.updated);
+            income += o.income;
+            expense += o.expense;
+            categories = ensure(categories, o.categories.length - 1);
+            for (int i = 0; i < o.categories.length; i++) categories[i] += o.categories[i];
+            overAdded.addAll(o.overAdded);
+            overRemoved.addAll(o.overRemoved);
+            return this;
+        }
+    }
+
+    private final WalletService wallets;
+    private final IUserRepository users;
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // ниже — только внутри synchronized report()
+    private final Map<String, Figures> figures = new HashMap<>();
+    private final Set<String> overBudget = new TreeSet<>();
+    private long income;
+    private long expense;
+    private long[] categories = new long[0];
+    // пользователей на момент прошлого обхода: регистрация только добавляет логины
+    private int seenUsers;
+    private Report cached;
+
+    public AnalyticsService(WalletService wallets, IUserRepository users) {
+        this.wallets = wallets;
+        this.users = users;
+        wallets.onChange(dirty::add);
+    }
+
+    // без изменений с прошлого вызова возвращается готовый отчёт
+    public synchronized Report report() {
+        long started = System.nanoTime();
+        Set<String> todo = new HashSet<>();
+        // isEmpty дешевле обхода: таблица множества не сжимается после пика изменений
+        if (!dirty.isEmpty()) {
+            for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+                todo.add(it.next());
+                it.remove();
+            }
+        }
+        Collection<String> logins = users.logins();
+        if (seenUsers != logins.size()) {
+            int n = 0;
+            for (String login : logins) {
+                n++;
+                if (!figures.containsKey(login)) todo.add(login);
+            }
+            seenUsers = n;
+        }
+        if (todo.isEmpty() && cached != null) return cached;
+
+        Delta d = todo.parallelStream().collect(Delta::new, (acc, login) -> acc.add(login, compute(login)), Delta::merge);
+        figures.putAll(d.updated);
+        income += d.income;
+        expense += d.expense;
+        categories = ensure(categories, d.categories.length - 1);
+        for (int i = 0; i < d.categories.length; i++) categories[i] += d.categories[i];
+        overBudget.addAll(d.overAdded);
+        overBudget.removeAll(d.overRemoved);
+
+        List<CategoryTotal> top = new ArrayList<>();
+        for (int i = 0; i < categories.length; i++) {
+            if (categories[i] > 0) top.add(new CategoryTotal(CategoryDictionary.name(i), categories[i]));
+        }
+        top.sort(Comparator.comparingLong(CategoryTotal::amount).reversed().thenComparing(CategoryTotal::category));
+        cached = new Report(figures.size(), income, expense, List.copyOf(top), List.copyOf(overBudget),
+                todo.size(), (System.nanoTime() - started) / 1e6);
+        return cached;
+    }
+
+    private Figures compute(String login) {
+        return wallets.peek(login, AnalyticsService::figures);
+    }
+
+    private static Figures figures(Wallet w) {
+        Map<String, Long> byCategory = w.expenseByCategory();
+        int[] ids = new int[byCategory.size()];
+        long[] sums = new long[byCategory.size()];
+        int k = 0;
+        for (var e : byCategory.entrySet()) {
+            ids[k] = CategoryDictionary.id(e.getKey());
+            sums[k++] = e.getValue();
+        }
+        boolean over = false;
+        for (var b : w.getBudgets().values()) {
+            if (w.expenseOf(b.getCategory()) > b.getLimit()) {
+                over = true;
+                break;
+            }
+        }
+        return new Figures(w.totalIncome(), w.totalExpense(), ids, sums, over);
+    }
+
+    private static long[] ensure(long[] arr, int index) {
+        return index < arr.length ? arr : Arrays.copyOf(arr, Math.max(index + 1, CategoryDictionary.size()));
+    }
+}
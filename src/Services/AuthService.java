@@ -3,26 +3,94 @@ package Services;
 import Interfaces.IUserRepository;
 import Models.User;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AuthService {
+    private static final Duration SESSION_TTL = Duration.ofMinutes(30);
+    // просроченные токены вычищаются раз в столько выдач
+    private static final int SWEEP_EVERY = 256;
+
     private final IUserRepository users;
+    private final HashingPool hashing;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+
+    // сессия продлевается при каждом обращении
+    private static final class Session {
+        final String login;
+        volatile long expiresAt;
+
+        Session(String login, long expiresAt) {
+            this.login = login;
+            this.expiresAt = expiresAt;
+        }
+    }
 
-    public AuthService(IUserRepository users) { this.users = users; }
+    public AuthService(IUserRepository users) {
+        this(users, HashingPool.fromSystemProperties(), SESSION_TTL);
+    }
+
+    public AuthService(IUserRepository users, HashingPool hashing, Duration sessionTtl) {
+        this.users = users;
+        this.hashing = hashing;
+        this.ttlNanos = sessionTtl.toNanos();
+    }
 
     public void register(String login, char[] password) {
         if (login == null || login.isBlank()) throw new IllegalArgumentException("Логин пуст");
+        if (!User.isValidLogin(login)) throw new IllegalArgumentException("Логин: буквы, цифры, _ . -, до 64 символов, не с точки");
         if (password == null || password.length < 4) throw new IllegalArgumentException("Пароль слишком короткий");
         if (users.findByLogin(login).isPresent()) throw new IllegalArgumentException("Пользователь уже существует");
         byte[] salt = PasswordHasher.newSalt();
-        String hash = PasswordHasher.hash(password, salt);
-        users.save(new User(login, hash, salt));
+        String hash = hashing.hash(password, salt);
+        if (!users.saveIfAbsent(new User(login, hash, salt))) throw new IllegalArgumentException("Пользователь уже существует");
     }
 
     public boolean authenticate(String login, char[] password) {
         Optional<User> u = users.findByLogin(login);
         if (u.isEmpty()) return false;
-        String h = PasswordHasher.hash(password, u.get().getSalt());
-        return h.equals(u.get().getPasswordHash());
+        String h = hashing.hash(password, u.get().getSalt());
+        return MessageDigest.isEqual(h.getBytes(StandardCharsets.US_ASCII), u.get().getPasswordHash().getBytes(StandardCharsets.US_ASCII));
     }
+
+    // проверка пароля и выдача токена сессии; дальше сессия подтверждается токеном без PBKDF2
+    public Optional<String> login(String login, char[] password) {
+        if (!authenticate(login, password)) return Optional.empty();
+        byte[] b = new byte[32];
+        random.nextBytes(b);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+        long now = System.nanoTime();
+        sessions.put(token, new Session(login, now + ttlNanos));
+        if ((b[0] & 0xFF) % SWEEP_EVERY == 0) sessions.values().removeIf(s -> s.expiresAt - now < 0);
+        return Optional.of(token);
+    }
+
+    public Optional<String> resume(String token) {
+        if (token == null) return Optional.empty();
+        Session s = sessions.get(token);
+        if (s == null) return Optional.empty();
+        long now = System.nanoTime();
+        if (s.expiresAt - now < 0) {
+            sessions.remove(token, s);
+            return Optional.empty();
+        }
+        s.expiresAt = now + ttlNanos;
+        return Optional.of(s.login);
+    }
+
+    public void logout(String token) {
+        if (token != null) sessions.remove(token);
+    }
+
+    public int activeSessions() { return sessions.size(); }
+
+    public HashingPool.Metrics hashingMetrics() { return hashing.metrics(); }
 }
@@ -0,0 +1,117 @@
+package Services;
+
+import Enums.BudgetEventType;
+import Enums.TxnType;
+import Interfaces.IBudgetListener;
+import Models.BudgetEvent;
+import Models.CategoryBudget;
+import Models.Transaction;
+import Models.Wallet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Оповещения по бюджету как события: после каждой операции сравнивается уровень до и после неё
+// (расход до = расход после − сумма операции), поэтому проверка стоит O(1) на транзакцию и не требует
+// ни пересчёта расходов, ни хранимого состояния. Событие возникает только при пересечении порога вверх.
+public class BudgetEngine {
+    private static final int NONE = 0, WARNING = 1, EXCEEDED = 2;
+
+    private final List<IBudgetListener> listeners = new CopyOnWriteArrayList<>();
+
+    // возвращает отписку
+    public Runnable subscribe(IBudgetListener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    // методы on* вызываются под блокировкой записи кошелька сразу после применения изменения
+    public List<BudgetEvent> onTransaction(Wallet w, Transaction t) {
+        long delta = t.getType() == TxnType.INCOME ? t.getAmount() : -t.getAmount();
+        BudgetEvent balance = balanceEvent(w, delta);
+        BudgetEvent budget = t.getType() == TxnType.EXPENSE ? categoryEvent(w, category(t), t.getAmount()) : null;
+        if (budget == null && balance == null) return List.of();
+        if (budget == null) return List.of(balance);
+        return balance == null ? List.of(budget) : List.of(budget, balance);
+    }
+
+    // пачка (импорт): сравнение до и после всей пачки, O(размер пачки)
+    public List<BudgetEvent> onBatch(Wallet w, List<Transaction> txns) {
+        Map<String, Long> spent = new HashMap<>();
+        long delta = 0;
+        for (Transaction t : txns) {
+            if (t.getType() == TxnType.INCOME) {
+                delta += t.getAmount();
+            } else {
+                delta -= t.getAmount();
+                spent.merge(category(t), t.getAmount(), Long::sum);
+            }
+        }
+        List<BudgetEvent> events = new ArrayList<>();
+        spent.forEach((cat, amount) -> {
+            BudgetEvent e = categoryEvent(w, cat, amount);
+            if (e != null) events.add(e);
+        });
+        BudgetEvent balance = balanceEvent(w, delta);
+        if (balance != null) events.add(balance);
+        return events;
+    }
+
+    // новый лимит может сразу оказаться превышенным текущими расходами; previous — прежний бюджет или null
+    public List<BudgetEvent> onBudgetChange(Wallet w, CategoryBudget previous, CategoryBudget current) {
+        long spent = w.expenseOf(current.getCategory());
+        int before = previous == null ? NONE : level(spent, previous.getLimit());
+        BudgetEvent e = event(w, current, spent, before);
+        return e == null ? List.of() : List.of(e);
+    }
+
+    // вызывается после снятия блокировки: ошибка слушателя не отменяет уже выполненную операцию
+    public void publish(List<BudgetEvent> events) {
+        if (events.isEmpty() || listeners.isEmpty()) return;
+        for (BudgetEvent e : events) {
+            for (IBudgetListener l : listeners) {
+                try {
+                    l.onEvent(e);
+                } catch (RuntimeException ex) {
+                    System.err.println("Ошибка обработчика оповещений: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private BudgetEvent categoryEvent(Wallet w, String cat, long added) {
+        CategoryBudget budget = w.getBudgets().get(cat);
+        if (budget == null) return null;
+        long spent = w.expenseOf(cat);
+        return event(w, budget, spent, level(spent - added, budget.getLimit()));
+    }
+
+    private static BudgetEvent event(Wallet w, CategoryBudget budget, long spent, int before) {
+        int after = level(spent, budget.getLimit());
+        if (after <= before) return null;
+        BudgetEventType type = after == EXCEEDED ? BudgetEventType.BUDGET_EXCEEDED : BudgetEventType.BUDGET_WARNING;
+        return new BudgetEvent(type, w.getOwnerLogin(), budget.getCategory(), spent, budget.getLimit());
+    }
+
+    private static BudgetEvent balanceEvent(Wallet w, long delta) {
+        long after = w.balance();
+        long before = after - delta;
+        if (after < 0 && before >= 0) return new BudgetEvent(BudgetEventType.BALANCE_NEGATIVE, w.getOwnerLogin(), null, after, 0);
+        if (after == 0 && before != 0) return new BudgetEvent(BudgetEventType.BALANCE_ZERO, w.getOwnerLogin(), null, 0, 0);
+        return null;
+    }
+
+    // 80% в целых копейках: spent * 5 >= limit * 4
+    private static int level(long spent, long limit) {
+        if (spent > limit) return EXCEEDED;
+        if (spent <= 0) return NONE;
+        return spent * 5 >= limit * 4 ? WARNING : NONE;
+    }
+
+    private static String category(Transaction t) {
+        return t.getCategory() == null ? Wallet.NO_CATEGORY : t.getCategory();
+    }
+}
@@ -0,0 +1,308 @@
+package Services;
+
+import Enums.TxnType;
+import Models.CategoryDictionary;
+import Models.FrozenWallet;
+import Models.HistoryCollector;
+import Models.HistoryCursor;
+import Models.JournalMark;
+import Models.Transaction;
+import Models.TransactionStore;
+import Models.Wallet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static Services.ColumnarWalletFile.*;
+
+// Колоночный бэкенд хранения кошелька рядом с JSON (см. формат в ColumnarWalletFile)
+public class ColumnarStorage {
+    private final Path dir;
+
+    public ColumnarStorage(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path path(String login) { return FileStorage.file(dir, login, ".cols"); }
+
+    public boolean exists(String login) { return Files.exists(path(login)); }
+
+    public ColumnarWalletFile open(String login) throws IOException {
+        return ColumnarWalletFile.open(path(login));
+    }
+
+    // колонки копируются в хранилище кошелька целиком, индексы строятся одним проходом (Wallet.of);
+    // объекты создаются только для заметок и нестандартных id
+    public Optional<FileStorage.Snapshot> load(String login) throws IOException {
+        if (!exists(login)) return Optional.empty();
+        try (ColumnarWalletFile f = open(login)) {
+            int rows = f.rows(), cap = Math.max(rows, 16);
+            byte[] types = new byte[cap];
+            long[] amounts = new long[cap], seconds = new long[cap], idHi = new long[cap], idLo = new long[cap];
+            int[] nanos = new int[cap], categories = new int[cap];
+            f.readTypes(types);
+            f.readAmounts(amounts);
+            f.readSeconds(seconds);
+            f.readNanos(nanos);
+            f.readCategories(categories);
+            f.readIdHi(idHi);
+            f.readIdLo(idLo);
+            // номера словаря файла -> номера общего словаря
+            int[] global = new int[f.categoryCount()];
+            for (int c = 0; c < global.length; c++) global[c] = CategoryDictionary.id(f.categoryName(c));
+            for (int i = 0; i < rows; i++) {
+                types[i] = types[i] == 0 ? (byte) 0 : 1;
+                categories[i] = categories[i] < 0 ? CategoryDictionary.NONE : global[categories[i]];
+            }
+            String[] notes = null;
+            for (int i = 0; i < rows; i++) {
+                String note = f.note(i);
+                if (note == null) continue;
+                if (notes == null) notes = new String[cap];
+                notes[i] = note;
+            }
+            // в idHi/idLo таких строк ключ истории; в хранилище у них, как у Transaction, нули
+            String[] custom = f.customIds().isEmpty() ? null : new String[cap];
+            for (var e : f.customIds().entrySet()) {
+                custom[e.getKey()] = e.getValue();
+                idHi[e.getKey()] = idLo[e.getKey()] = 0;
+            }
+            Wallet w = Wallet.of(login, TransactionStore.of(rows, types, amounts, seconds, nanos, categories, idHi, idLo, notes, custom));
+            f.budgetsMinor().forEach((cat, limit) -> w.setBudget(cat, limit));
+            return Optional.of(new FileStorage.Snapshot(w, f.journalMark()));
+        }
+    }
+
+    public JournalMark journalMark(String login) throws IOException {
+        if (!exists(login)) return JournalMark.NONE;
+        try (ColumnarWalletFile f = open(login)) {
+            return f.journalMark();
+        }
+    }
+
+    // страница истории прямо по отображённым колонкам, без сборки кошелька: двоичный поиск курсора и проход
+    // к старым строкам, пока страница не заполнится. removed — id операций, отменённых в журнале
+    public void history(String login, HistoryCollector c, Set<UUID> removed) throws IOException {
+        if (!exists(login)) return;
+        try (ColumnarWalletFile f = open(login)) {
+            boolean[] accepted = new boolean[f.categoryCount() + 1];
+            for (int i = 0; i < f.categoryCount(); i++) accepted[i] = c.filter().acceptsCategory(f.categoryName(i));
+            accepted[f.categoryCount()] = c.filter().acceptsCategory(null);
+            TxnType type = c.filter().type();
+            int[] order = f.sortedByTime() ? null : historyOrder(f);
+            for (int k = start(f, order, c); k >= 0; k--) {
+                int i = order == null ? k : order[k];
+                // строки дальше только старше: раз эта уже не нужна, не нужны и они
+                if (!c.wants(f.epochSecond(i), f.nano(i), f.idHi(i), f.idLo(i))) break;
+                int cat = f.categoryId(i);
+                if (type != null && f.type(i) != type || !accepted[cat < 0 ? accepted.length - 1 : cat]) continue;
+                if (!removed.isEmpty() && removed.contains(new UUID(f.idHi(i), f.idLo(i)))) continue;
+                c.offer(transaction(f, i));
+            }
+        }
+    }
+
+    private static Transaction transaction(ColumnarWalletFile f, int i) {
+        if (!f.hasUuid(i)) return new Transaction(f.id(i), f.type(i), f.category(i), f.amountMinor(i), f.note(i), f.at(i));
+        return new Transaction(f.idHi(i), f.idLo(i), f.type(i), f.category(i), f.amountMinor(i), f.note(i), f.at(i));
+    }
+
+    // последняя позиция старше курсора — двоичным поиском по ключу (время, id)
+    private static int start(ColumnarWalletFile f, int[] order, HistoryCollector c) {
+        int lo = 0, hi = f.rows();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1, i = order == null ? mid : order[mid];
+            if (c.pastCursor(f.epochSecond(i), f.nano(i), f.idHi(i), f.idLo(i))) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo - 1;
+    }
+
+    // файл в порядке добавления (записан до упорядочивания): порядок строится один раз на чтение,
+    // при следующей свёртке файл перепишется упорядоченным
+    private static int[] historyOrder(ColumnarWalletFile f) {
+        Integer[] boxed = new Integer[f.rows()];
+        for (int i = 0; i < boxed.length; i++) boxed[i] = i;
+        Arrays.sort(boxed, (a, b) -> HistoryCursor.compare(f.epochSecond(a), f.nano(a), f.idHi(a), f.idLo(a),
+                f.epochSecond(b), f.nano(b), f.idHi(b), f.idLo(b)));
+        int[] order = new int[boxed.length];
+        for (int i = 0; i < order.length; i++) order[i] = boxed[i];
+        return order;
+    }
+
+    // запись во временный файл и атомарная замена, чтобы читатели отображения не видели половину файла.
+    // Строки пишутся в порядке ключа истории (время, id): страница истории — двоичный поиск и проход с конца
+    public void save(Wallet w, JournalMark mark) throws IOException {
+        save(w.freeze(), mark);
+    }
+
+    public void save(FrozenWallet w, JournalMark mark) throws IOException {
+        TransactionStore txns = w.store();
+        int rows = txns.size();
+        int[] order = w.order();
+
+        // номера общего словаря категорий -> номера словаря файла
+        Map<String, Integer> dict = new LinkedHashMap<>();
+        int[] local = new int[CategoryDictionary.size()];
+        Arrays.fill(local, -1);
+        for (int i = 0; i < rows; i++) {
+            int c = txns.categoryId(i);
+            if (c != CategoryDictionary.NONE && local[c] < 0) {
+                local[c] = dict.size();
+                dict.put(CategoryDictionary.name(c), local[c]);
+            }
+        }
+        for (String c : w.budgets().keySet()) dict.putIfAbsent(c, dict.size());
+        List<byte[]> dictBytes = new ArrayList<>(dict.size());
+        long dictSize = 0;
+        for (String c : dict.keySet()) {
+            byte[] b = c.getBytes(StandardCharsets.UTF_8);
+            dictBytes.add(b);
+            dictSize += 4 + b.length;
+        }
+        // заметки кодируются один раз: те же байты дают и смещения, и длины, и блок
+        // (у одиночного суррогата в UTF-8 один байт «?», подсчёт по символам разошёлся бы с записью)
+        byte[][] noteBytes = new byte[rows][];
+        long notesSize = 0;
+        for (int i = 0; i < rows; i++) {
+            String note = txns.note(order[i]);
+            if (note == null) continue;
+            noteBytes[i] = note.getBytes(StandardCharsets.UTF_8);
+            notesSize += noteBytes[i].length;
+        }
+        // id не в виде UUID редки: хранятся списком строк, а не колонкой
+        List<Integer> customRows = new ArrayList<>();
+        List<byte[]> customBytes = new ArrayList<>();
+        long customSize = 4;
+        for (int i = 0; i < rows; i++) {
+            if (txns.hasUuid(order[i])) continue;
+            byte[] b = txns.id(order[i]).getBytes(StandardCharsets.UTF_8);
+            customRows.add(i);
+            customBytes.add(b);
+            customSize += 8 + b.length;
+        }
+
+        long[] section = new long[SECTIONS];
+        long[] size = new long[SECTIONS];
+        size[DICT] = dictSize;
+        size[BUDGETS] = 12L * w.budgets().size();
+        size[TYPE] = rows;
+        size[AMOUNT] = size[SECOND] = size[ID_HI] = size[ID_LO] = 8L * rows;
+        size[NANO] = size[CATEGORY] = size[NOTE_OFF] = size[NOTE_LEN] = 4L * rows;
+        size[NOTE_BLOB] = notesSize;
+        size[CUSTOM_IDS] = customSize;
+        long pos = HEADER_SIZE;
+        for (int s = 0; s < SECTIONS; s++) {
+            pos = (pos + 7) & ~7L;
+            section[s] = pos;
+            pos += size[s];
+        }
+        if (pos > Integer.MAX_VALUE) throw new IOException("Кошелёк слишком велик для колоночного файла");
+
+        Path target = path(w.ownerLogin());
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                Out out = new Out(ch);
+                out.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(dict.size()).putInt(w.budgets().size()).putInt(SORTED_BY_TIME);
+                out.putLong(mark.generation()).putLong(mark.offset());
+                for (long s : section) out.putLong(s);
+
+                out.seek(section[DICT]);
+                for (byte[] b : dictBytes) out.putInt(b.length).put(b);
+                out.seek(section[BUDGETS]);
+                for (var e : w.budgets().entrySet()) out.putInt(dict.get(e.getKey())).putLong(e.getValue().getLimit());
+                out.seek(section[TYPE]);
+                for (int i = 0; i < rows; i++) out.put((byte) (txns.isIncome(order[i]) ? 0 : 1));
+                out.seek(section[AMOUNT]);
+                for (int i = 0; i < rows; i++) out.putLong(txns.amount(order[i]));
+                out.seek(section[SECOND]);
+                for (int i = 0; i < rows; i++) out.putLong(txns.epochSecond(order[i]));
+                out.seek(section[NANO]);
+                for (int i = 0; i < rows; i++) out.putInt(txns.nano(order[i]));
+                out.seek(section[CATEGORY]);
+                for (int i = 0; i < rows; i++) {
+                    int c = txns.categoryId(order[i]);
+                    out.putInt(c == CategoryDictionary.NONE ? -1 : local[c]);
+                }
+                UUID[] custom = new UUID[rows];
+                for (int i = 0; i < rows; i++) if (!txns.hasUuid(order[i])) custom[i] = HistoryCursor.idKey(txns.id(order[i]));
+                out.seek(section[ID_HI]);
+                for (int i = 0; i < rows; i++) out.putLong(custom[i] == null ? txns.idHi(order[i]) : custom[i].getMostSignificantBits());
+                out.seek(section[ID_LO]);
+                for (int i = 0; i < rows; i++) out.putLong(custom[i] == null ? txns.idLo(order[i]) : custom[i].getLeastSignificantBits());
+                out.seek(section[NOTE_OFF]);
+                int off = 0;
+                for (int i = 0; i < rows; i++) {
+                    out.putInt(off);
+                    if (noteBytes[i] != null) off += noteBytes[i].length;
+                }
+                out.seek(section[NOTE_LEN]);
+                for (int i = 0; i < rows; i++) out.putInt(noteBytes[i] == null ? -1 : noteBytes[i].length);
+                out.seek(section[NOTE_BLOB]);
+                for (int i = 0; i < rows; i++) if (noteBytes[i] != null) out.put(noteBytes[i]);
+                out.seek(section[CUSTOM_IDS]);
+                out.putInt(customRows.size());
+                for (int k = 0; k < customRows.size(); k++) out.putInt(customRows.get(k)).putInt(customBytes.get(k).length).put(customBytes.get(k));
+                out.flush();
+                ch.force(false);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // последовательная запись через один переиспользуемый буфер
+    private static final class Out {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long written;
+
+        Out(FileChannel ch) { this.ch = ch; }
+
+        Out put(byte b) throws IOException { ensure(1); buf.put(b); return this; }
+        Out putInt(int v) throws IOException { ensure(4); buf.putInt(v); return this; }
+        Out putLong(long v) throws IOException { ensure(8); buf.putLong(v); return this; }
+        Out put(byte[] b) throws IOException {
+            int i = 0;
+            while (i < b.length) {
+                ensure(1);
+                int n = Math.min(buf.remaining(), b.length - i);
+                buf.put(b, i, n);
+                i += n;
+            }
+            return this;
+        }
+
+        // дописать нули до начала следующей секции
+        void seek(long offset) throws IOException {
+            while (written + buf.position() < offset) put((byte) 0);
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) written += ch.write(buf);
+            buf.clear();
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+    }
+}
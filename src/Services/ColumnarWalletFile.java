@@ -0,0 +1,202 @@
+package Services;
+
+import Enums.TxnType;
+import Models.JournalMark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Колоночный файл кошелька (data/<login>.cols), открытый через FileChannel.map.
+// Колонки читаются на месте, без разбора текста и без объекта Transaction на строку.
+//
+// Формат (little-endian):
+//   заголовок: magic, version, rows, dictCount, budgetCount, flags, поколение и смещение журнала (long),
+//              затем смещения секций (long); флаг SORTED_BY_TIME — строки упорядочены по (время, id),
+//              как идёт история операций; отметка журнала — докуда он учтён в снимке (см. JournalMark)
+//   словарь категорий: [len:int][utf-8]...
+//   бюджеты: [categoryId:int][limit:long, копейки]...
+//   колонки: type:byte[rows], amount:long[rows] (копейки), epochSecond:long[rows], nano:int[rows],
+//            categoryId:int[rows] (-1 = без категории), idHi:long[rows], idLo:long[rows],
+//            noteOffset:int[rows], noteLength:int[rows] (-1 = null), блок заметок utf-8
+//   id не в виде UUID (например, из импорта CSV): [count:int], затем [row:int][len:int][utf-8]...;
+//            в idHi/idLo таких строк — ключ HistoryCursor.idKey, по нему упорядочена история.
+//   Версия 2 — без секции id, версия 1 — ещё и без отметки журнала
+public class ColumnarWalletFile implements Closeable {
+    static final int MAGIC = 0x31434650; // "PFC1"
+    static final int VERSION = 3;
+    static final int SECTIONS = 13;
+    static final int SORTED_BY_TIME = 1;
+    static final int HEADER_SIZE = 5 * 4 + 4 + 2 * 8 + SECTIONS * 8;
+
+    static final int DICT = 0, BUDGETS = 1, TYPE = 2, AMOUNT = 3, SECOND = 4, NANO = 5,
+            CATEGORY = 6, ID_HI = 7, ID_LO = 8, NOTE_OFF = 9, NOTE_LEN = 10, NOTE_BLOB = 11,
+            CUSTOM_IDS = 12;
+
+    // null после close: обращение к закрытому файлу — NullPointerException, а не чтение снятого отображения
+    private MappedByteBuffer buf;
+    private final int rows;
+    private final int flags;
+    private final JournalMark journal;
+    private final String[] categories;
+    private final long[] section = new long[SECTIONS];
+    private final Map<String, Long> budgets = new LinkedHashMap<>();
+    private final Map<Integer, String> customIds = new HashMap<>();
+
+    private ColumnarWalletFile(MappedByteBuffer buf) throws IOException {
+        this.buf = buf;
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.getInt(0) != MAGIC) throw new IOException("Не колоночный файл кошелька");
+        int version = buf.getInt(4);
+        if (version < 1 || version > VERSION) throw new IOException("Неподдерживаемая версия файла: " + version);
+        rows = buf.getInt(8);
+        int dictCount = buf.getInt(12);
+        int budgetCount = buf.getInt(16);
+        flags = buf.getInt(20);
+        journal = version == 1 ? JournalMark.NONE : new JournalMark(buf.getLong(24), buf.getLong(32));
+        int sections = version == 1 ? 24 : 40;
+        int sectionCount = version < 3 ? CUSTOM_IDS : SECTIONS;
+        for (int s = 0; s < sectionCount; s++) section[s] = buf.getLong(sections + s * 8);
+
+        categories = new String[dictCount];
+        int p = (int) section[DICT];
+        for (int i = 0; i < dictCount; i++) {
+            int len = buf.getInt(p);
+            categories[i] = utf8(p + 4, len);
+            p += 4 + len;
+        }
+        p = (int) section[BUDGETS];
+        for (int i = 0; i < budgetCount; i++) {
+            budgets.put(categories[buf.getInt(p)], buf.getLong(p + 4));
+            p += 12;
+        }
+        if (sectionCount == SECTIONS) {
+            p = (int) section[CUSTOM_IDS];
+            int count = buf.getInt(p);
+            p += 4;
+            for (int i = 0; i < count; i++) {
+                int len = buf.getInt(p + 4);
+                customIds.put(buf.getInt(p), utf8(p + 8, len));
+                p += 8 + len;
+            }
+        }
+    }
+
+    public static ColumnarWalletFile open(Path p) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Файл кошелька больше 2 ГБ");
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            try {
+                return new ColumnarWalletFile(b);
+            } catch (IOException | RuntimeException e) {
+                unmap(b);
+                throw e;
+            }
+        }
+    }
+
+    public int rows() { return rows; }
+    // файлы, записанные до упорядочивания строк, хранят их в порядке добавления
+    public boolean sortedByTime() { return (flags & SORTED_BY_TIME) != 0; }
+    public JournalMark journalMark() { return journal; }
+    public int categoryCount() { return categories.length; }
+    public String categoryName(int id) { return id < 0 ? null : categories[id]; }
+    public Map<String, Long> budgetsMinor() { return budgets; }
+
+    public TxnType type(int i) { return buf.get((int) section[TYPE] + i) == 0 ? TxnType.INCOME : TxnType.EXPENSE; }
+    public long amountMinor(int i) { return buf.getLong((int) section[AMOUNT] + i * 8); }
+    public long epochSecond(int i) { return buf.getLong((int) section[SECOND] + i * 8); }
+    public int nano(int i) { return buf.getInt((int) section[NANO] + i * 4); }
+    public int categoryId(int i) { return buf.getInt((int) section[CATEGORY] + i * 4); }
+
+    public String category(int i) { return categoryName(categoryId(i)); }
+    public LocalDateTime at(int i) { return LocalDateTime.ofEpochSecond(epochSecond(i), nano(i), ZoneOffset.UTC); }
+    public long idHi(int i) { return buf.getLong((int) section[ID_HI] + i * 8); }
+    public long idLo(int i) { return buf.getLong((int) section[ID_LO] + i * 8); }
+    public boolean hasUuid(int i) { return customIds.isEmpty() || !customIds.containsKey(i); }
+    public String id(int i) {
+        String custom = customIds.isEmpty() ? null : customIds.get(i);
+        return custom != null ? custom : new UUID(idHi(i), idLo(i)).toString();
+    }
+    public String note(int i) {
+        int len = buf.getInt((int) section[NOTE_LEN] + i * 4);
+        if (len < 0) return null;
+        return utf8((int) section[NOTE_BLOB] + buf.getInt((int) section[NOTE_OFF] + i * 4), len);
+    }
+
+    // колонки целиком в массивы (dst не короче rows) — копированием из отображения, без разбора по строке
+    public void readTypes(byte[] dst) { buf.get((int) section[TYPE], dst, 0, rows); }
+    public void readAmounts(long[] dst) { longs(AMOUNT, dst); }
+    public void readSeconds(long[] dst) { longs(SECOND, dst); }
+    public void readNanos(int[] dst) { ints(NANO, dst); }
+    public void readCategories(int[] dst) { ints(CATEGORY, dst); }
+    public void readIdHi(long[] dst) { longs(ID_HI, dst); }
+    public void readIdLo(long[] dst) { longs(ID_LO, dst); }
+    // номер строки -> id не в виде UUID
+    public Map<Integer, String> customIds() { return customIds; }
+
+    private void longs(int s, long[] dst) {
+        buf.slice((int) section[s], rows * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(dst, 0, rows);
+    }
+
+    private void ints(int s, int[] dst) {
+        buf.slice((int) section[s], rows * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(dst, 0, rows);
+    }
+
+    // отображение снимается сразу, а не когда до буфера доберётся сборщик мусора: до этого файл занят,
+    // и на Windows его нельзя заменить новым снимком. Файл читается одним потоком и после close не используется
+    @Override
+    public void close() {
+        MappedByteBuffer b = buf;
+        buf = null;
+        if (b != null) unmap(b);
+    }
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method cleaner = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            cleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // нет jdk.unsupported — отображение снимет сборщик мусора
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = cleaner;
+    }
+
+    private static void unmap(MappedByteBuffer b) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, b);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Ошибка освобождения файла: " + e.getMessage());
+        }
+    }
+
+    private String utf8(int offset, int len) {
+        byte[] b = new byte[len];
+        buf.get(offset, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
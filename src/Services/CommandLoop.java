@@ -1,47 +1,127 @@
 package Services;
 
-import Interfaces.IUserRepository;
-import Interfaces.IWalletRepository;
+import Enums.Frequency;
+import Enums.TxnType;
+import Models.BudgetEvent;
+import Models.HistoryCollector;
+import Models.HistoryCursor;
+import Models.HistoryFilter;
+import Models.HistoryPage;
+import Models.Money;
+import Models.RecurringRule;
+import Models.SearchResult;
+import Models.Transaction;
+import Models.TransactionQuery;
+import Models.TransactionStore;
 import Models.Wallet;
-import Repositories.UserRepository;
-import Repositories.WalletRepository;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
+// Цикл команд одной сессии: своё состояние входа и свой ввод/вывод поверх общего FinanceCore.
+// Консольный и пакетный режимы владеют ядром и закрывают его на exit; сетевые сессии ядро не закрывают.
 public class CommandLoop {
+    // BATCH: без приглашения и оповещений по бюджету, вывод копится в буфере, ошибки с номером строки
+    public enum Mode { CONSOLE, REMOTE, BATCH }
+
+    // по гистограмме на команду; неизвестные имена сводятся в одну, чтобы ввод не раздувал реестр
+    private static final Map<String, Histogram> COMMAND_TIME = new ConcurrentHashMap<>();
+    private static final LongAdder COMMAND_ERRORS = Metrics.counter("errors.command");
+    private static final DateTimeFormatter LISTING_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final FinanceCore core;
     private final AuthService auth;
     private final WalletService wallet;
     private final ReportingService reporting;
     private final TransferService transfer;
-    private final UserRepository userRepo;
-    private final WalletRepository walletRepo;
     private final FileStorage fileStorage;
+    private final CsvImporter importer;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final Mode mode;
+    private long lineNo;
+    private long commands;
+    private long errors;
 
     private String currentLogin;
+    private String sessionToken;
 
     public CommandLoop() {
-        this.userRepo = new UserRepository();
-        this.walletRepo = new WalletRepository();
-        this.auth = new AuthService(userRepo);
-        this.wallet = new WalletService(walletRepo);
-        this.reporting = new ReportingService();
-        this.transfer = new TransferService(wallet);
-        this.fileStorage = new FileStorage();
+        this(new FinanceCore(), new BufferedReader(new InputStreamReader(System.in)), new PrintWriter(System.out, true), Mode.CONSOLE);
+    }
+
+    // пакетный режим: команды из файла или из stdin (path == null), вывод одним буферизованным потоком
+    public static CommandLoop batch(Path path) throws IOException {
+        BufferedReader in = path == null
+                ? new BufferedReader(new InputStreamReader(System.in), 1 << 16)
+                : Files.newBufferedReader(path);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16), false);
+        return new CommandLoop(new FinanceCore(), in, out, Mode.BATCH);
+    }
+
+    public CommandLoop(FinanceCore core, BufferedReader in, PrintWriter out, Mode mode) {
+        this.core = core;
+        this.auth = core.auth();
+        this.wallet = core.wallet();
+        this.reporting = core.reporting();
+        this.transfer = core.transfer();
+        this.fileStorage = core.fileStorage();
+        this.importer = core.importer();
+        this.in = in;
+        this.out = out;
+        this.mode = mode;
     }
 
     public void run() {
-        Scanner sc = new Scanner(System.in);
-        System.out.println("Личный Финансы CLI. Введите 'help' для команд.");
+        boolean batch = mode == Mode.BATCH;
+        long started = System.nanoTime();
+        if (!batch) out.println("Личный Финансы CLI. Введите 'help' для команд.");
         while (true) {
-            System.out.print("> ");
-            String line = sc.nextLine().trim();
-            if (line.isBlank()) continue;
+            if (!batch) {
+                out.print("> ");
+                out.flush();
+            }
+            String line;
+            try {
+                line = in.readLine();
+            } catch (IOException e) {
+                line = null;
+            }
+            // конец ввода (закрытое соединение, конец файла) — как exit, но без вывода
+            if (line == null) {
+                if (batch) { cmdSave(); report(started); }
+                close();
+                return;
+            }
+            lineNo++;
             String[] parts = parseArgs(line);
+            if (parts.length == 0 || (batch && parts[0].startsWith("#"))) continue;
             String cmd = parts[0].toLowerCase(Locale.ROOT);
+            commands++;
+            long cmdStart = System.nanoTime();
+            boolean known = true;
 
             try {
                 switch (cmd) {
@@ -49,6 +129,10 @@ public class CommandLoop {
                     case "register" -> cmdRegister(parts);
                     case "login" -> cmdLogin(parts);
                     case "logout" -> cmdLogout();
+                    case "resume" -> cmdResume(parts);
+                    case "auth-stats" -> cmdAuthStats();
+                    case "stats" -> cmdStats();
+                    case "analytics" -> cmdAnalytics(parts);
                     case "income" -> cmdIncome(parts);
                     case "expense" -> cmdExpense(parts);
                     case "budget-set" -> cmdBudgetSet(parts);
@@ -59,23 +143,58 @@ public class CommandLoop {
                     case "budget-status" -> cmdBudgetStatus();
                     case "alerts" -> cmdAlerts();
                     case "filter-expense" -> cmdFilterExpense(parts);
+                    case "period" -> cmdPeriod(parts);
+                    case "search" -> cmdSearch(parts);
+                    case "history" -> cmdHistory(parts);
+                    case "trend" -> cmdTrend(parts);
+                    case "yoy" -> cmdYearOverYear(parts);
+                    case "rolling" -> cmdRolling(parts);
+                    case "recurring-add" -> cmdRecurringAdd(parts);
+                    case "recurring-list" -> cmdRecurringList();
+                    case "recurring-delete" -> cmdRecurringDelete(parts);
                     case "transfer" -> cmdTransfer(parts);
-                    case "export-csv" -> cmdExportCsv();
+                    case "export-csv" -> cmdExportCsv(parts);
+                    case "import-csv" -> cmdImportCsv(parts);
                     case "save" -> cmdSave();
-                    case "exit" -> { cmdSave(); System.out.println("Выход."); return; }
-                    default -> System.out.println("Неизвестная команда. 'help' для списка.");
+                    case "exit" -> {
+                        cmdSave();
+                        if (batch) report(started);
+                        else out.println("Выход.");
+                        close();
+                        return;
+                    }
+                    default -> {
+                        known = false;
+                        if (batch) throw new IllegalArgumentException("Неизвестная команда: " + parts[0]);
+                        out.println("Неизвестная команда. 'help' для списка.");
+                    }
                 }
             } catch (Exception e) {
-                System.out.println("Ошибка: " + e.getMessage());
+                errors++;
+                COMMAND_ERRORS.increment();
+                if (batch) out.println("Ошибка (строка " + lineNo + "): " + e.getMessage());
+                else out.println("Ошибка: " + e.getMessage());
             }
+            COMMAND_TIME.computeIfAbsent(known ? cmd : "unknown", c -> Metrics.timer("command." + c)).time(cmdStart);
+            if (!batch) out.flush();
         }
     }
 
+    private void report(long started) {
+        out.printf("Выполнено команд: %d, ошибок: %d, за %.1f мс%n", commands, errors, (System.nanoTime() - started) / 1e6);
+    }
+
+    private void close() {
+        if (mode != Mode.REMOTE) core.close();
+        out.flush();
+    }
+
     private void printHelp() {
-        System.out.println("""
+        out.println("""
         Команды:
           register <login> <password>
           login <login> <password>              (загружает кошелёк из файла при наличии)
+          resume <token>                        (вход по токену сессии без проверки пароля)
           logout
           income <category> <amount> [note]
           expense <category> <amount> [note]
@@ -87,8 +206,24 @@ public class CommandLoop {
           budget-status
           alerts
           filter-expense <cat1,cat2,...>
+          period <yyyy-mm-dd> <yyyy-mm-dd>      (сводка и расходы по категориям за период)
+          search [слова] [--cat c1,c2] [--type income|expense] [--min сумма] [--max сумма]
+                 [--from yyyy-mm-dd] [--to yyyy-mm-dd] [--limit N]   (поиск по заметкам; слово* — по началу)
+          history [--type income|expense] [--cat c1,c2] [--limit N] [--after курсор]
+                                                (операции от новых к старым, по N на страницу, по умолчанию 20)
+          trend [N] [--cat c] [--type income|expense]          (суммы за последние N месяцев, по умолчанию 12)
+          yoy [yyyy] [--type income|expense]                   (год к предыдущему по категориям, с января)
+          rolling [окно] [N] [--cat c] [--type income|expense] (скользящее среднее, по умолчанию 3 и 12 месяцев)
           transfer <toLogin> <amount> [note]
-          export-csv
+          recurring-add <income|expense> <category> <amount> <daily|weekly|monthly|yearly> [yyyy-mm-dd] [note]
+                                                (повторяющаяся операция, начиная с даты или с текущего момента)
+          recurring-list
+          recurring-delete <id>
+          export-csv [--from yyyy-mm-dd] [--to yyyy-mm-dd] [--cat c1,c2] [--gzip]
+          import-csv [path]                     (по умолчанию data/<login>-txns.csv)
+          auth-stats                            (задержка хеширования паролей и очередь пула)
+          stats                                 (задержки команд, чтение/запись кошельков, ошибки, состояние)
+          analytics [N]                         (сводка по всем кошелькам, N крупнейших категорий)
           save
           exit
         """);
@@ -97,88 +232,133 @@ public class CommandLoop {
     private void cmdRegister(String[] a) {
         ensureArgs(a, 3, "register <login> <password>");
         auth.register(a[1], a[2].toCharArray());
-        System.out.println("Регистрация успешно выполнена.");
+        out.println("Регистрация успешно выполнена.");
     }
 
     private void cmdLogin(String[] a) {
         ensureArgs(a, 3, "login <login> <password>");
-        boolean ok = auth.authenticate(a[1], a[2].toCharArray());
-        if (!ok) { System.out.println("Неверные учетные данные"); return; }
-        currentLogin = a[1];
-        // загрузить кошелёк из файла (если есть)
-        fileStorage.loadUserWallet(currentLogin).ifPresent(walletRepo::save);
-        // инициализировать кошелек при отсутствии
+        Optional<String> token = auth.login(a[1], a[2].toCharArray());
+        if (token.isEmpty()) { out.println("Неверные учетные данные"); return; }
+        startSession(a[1], token.get());
+        out.println("Вход выполнен. Токен сессии: " + sessionToken);
+    }
+
+    private void cmdResume(String[] a) {
+        ensureArgs(a, 2, "resume <token>");
+        Optional<String> login = auth.resume(a[1]);
+        if (login.isEmpty()) { out.println("Сессия не найдена или истекла"); return; }
+        startSession(login.get(), a[1]);
+        out.println("Сессия восстановлена: " + currentLogin);
+    }
+
+    private void startSession(String login, String token) {
+        if (currentLogin != null) cmdSave();
+        currentLogin = login;
+        sessionToken = token;
+        // загрузить кошелёк из снимка и журнала (если есть) или инициализировать пустой
         wallet.ensureWallet(currentLogin);
-        System.out.println("Вход выполнен.");
+    }
+
+    private void cmdAuthStats() {
+        out.println(auth.hashingMetrics());
+        out.println("Активных сессий: " + auth.activeSessions());
+    }
+
+    private void cmdStats() {
+        out.print(Metrics.dump());
+        out.println(auth.hashingMetrics());
+    }
+
+    // показатели всей системы с логинами других пользователей — только для локального оператора
+    private void cmdAnalytics(String[] a) {
+        if (mode == Mode.REMOTE) throw new IllegalArgumentException("Команда недоступна в сетевой сессии");
+        int top;
+        try {
+            top = a.length >= 2 ? Integer.parseInt(a[1]) : 10;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное число категорий: " + a[1]);
+        }
+        if (top < 0) throw new IllegalArgumentException("Некорректное число категорий: " + a[1]);
+        AnalyticsService.Report r = core.analytics().report();
+        out.println("Кошельков: " + r.wallets() + String.format(Locale.ROOT, " (последний пересчёт: %d за %.1f мс)",
+                r.recomputed(), r.refreshMs()));
+        out.println(reporting.summary(r.totalIncome(), r.totalExpense()));
+        out.println("Крупнейшие категории расходов:");
+        r.categories().stream().limit(top).forEach(c -> out.println("  " + c.category() + ": " + Money.format(c.amount())));
+        List<String> over = r.overBudget();
+        out.println("Превысили бюджет: " + over.size() + (over.isEmpty() ? "" : " — "
+                + String.join(", ", over.subList(0, Math.min(over.size(), 20))) + (over.size() > 20 ? ", ..." : "")));
     }
 
     private void cmdLogout() {
         ensureAuth();
         cmdSave();
+        auth.logout(sessionToken);
         currentLogin = null;
-        System.out.println("Вы вышли из аккаунта.");
+        sessionToken = null;
+        out.println("Вы вышли из аккаунта.");
     }
 
     private void cmdIncome(String[] a) {
         ensureAuth();
         ensureArgs(a, 3, "income <category> <amount> [note]");
         String cat = a[1];
-        double amount = parseAmount(a[2]);
+        long amount = parseAmount(a[2]);
         String note = a.length >= 4 ? joinTail(a, 3) : null;
-        wallet.addIncome(currentLogin, cat, amount, note, LocalDateTime.now());
-        notifyBudget(cat);
+        notifyBudget(wallet.addIncome(currentLogin, cat, amount, note, LocalDateTime.now()));
     }
 
     private void cmdExpense(String[] a) {
         ensureAuth();
         ensureArgs(a, 3, "expense <category> <amount> [note]");
         String cat = a[1];
-        double amount = parseAmount(a[2]);
+        long amount = parseAmount(a[2]);
         String note = a.length >= 4 ? joinTail(a, 3) : null;
-        wallet.addExpense(currentLogin, cat, amount, note, LocalDateTime.now());
-        notifyBudget(cat);
+        notifyBudget(wallet.addExpense(currentLogin, cat, amount, note, LocalDateTime.now()));
     }
 
     private void cmdBudgetSet(String[] a) {
         ensureAuth();
         ensureArgs(a, 3, "budget-set <category> <limit>");
-        wallet.setBudget(currentLogin, a[1], parseAmount(a[2]));
-        System.out.println("Бюджет установлен.");
+        List<BudgetEvent> events = wallet.setBudget(currentLogin, a[1], parseAmount(a[2]));
+        out.println("Бюджет установлен.");
+        notifyBudget(events);
     }
 
     private void cmdBudgetEdit(String[] a) {
         ensureAuth();
         ensureArgs(a, 3, "budget-edit <category> <limit>");
-        wallet.editBudget(currentLogin, a[1], parseAmount(a[2]));
-        System.out.println("Бюджет обновлен.");
+        List<BudgetEvent> events = wallet.editBudget(currentLogin, a[1], parseAmount(a[2]));
+        out.println("Бюджет обновлен.");
+        notifyBudget(events);
     }
 
     private void cmdSummary() {
         ensureAuth();
-        Wallet w = wallet.ensureWallet(currentLogin);
-        System.out.println(reporting.summary(w));
+        String summary = wallet.read(currentLogin, reporting::summary);
+        out.println(summary);
     }
 
     private void cmdIncomeByCat() {
         ensureAuth();
-        System.out.println(reporting.byCategory(wallet.incomeByCategory(currentLogin), "Доходы по категориям"));
+        out.println(reporting.byCategory(wallet.incomeByCategory(currentLogin), "Доходы по категориям"));
     }
 
     private void cmdExpenseByCat() {
         ensureAuth();
-        System.out.println(reporting.byCategory(wallet.expenseByCategory(currentLogin), "Расходы по категориям"));
+        out.println(reporting.byCategory(wallet.expenseByCategory(currentLogin), "Расходы по категориям"));
     }
 
     private void cmdBudgetStatus() {
         ensureAuth();
-        wallet.budgetStatus(currentLogin).forEach((k,v) -> System.out.println(k + ": " + v));
+        wallet.budgetStatus(currentLogin).forEach((k,v) -> out.println(k + ": " + v));
     }
 
     private void cmdAlerts() {
         ensureAuth();
         var list = wallet.alerts(currentLogin);
-        if (list.isEmpty()) System.out.println("Оповещений нет.");
-        else list.forEach(System.out::println);
+        if (list.isEmpty()) out.println("Оповещений нет.");
+        else list.forEach(out::println);
     }
 
     private void cmdFilterExpense(String[] a) {
@@ -186,31 +366,248 @@ public class CommandLoop {
         ensureArgs(a, 2, "filter-expense <cat1,cat2,...>");
         List<String> cats = Arrays.stream(a[1].split(",")).map(String::trim).filter(s->!s.isBlank()).toList();
         var map = wallet.expenseBySelectedCategories(currentLogin, cats);
-        map.forEach((k,v) -> System.out.println(k + ": " + String.format("%,.1f", v)));
+        map.forEach((k, v) -> {
+            if (v == 0) out.println("Внимание: категория не найдена или нет расходов: " + k);
+        });
+        map.forEach((k,v) -> out.println(k + ": " + Money.format(v)));
+    }
+
+    private void cmdPeriod(String[] a) {
+        ensureAuth();
+        ensureArgs(a, 3, "period <yyyy-mm-dd> <yyyy-mm-dd>");
+        LocalDateTime from = parseDate(a[1]).atStartOfDay();
+        LocalDateTime to = parseDate(a[2]).plusDays(1).atStartOfDay();
+        out.println(reporting.summary(wallet.periodIncome(currentLogin, from, to), wallet.periodExpense(currentLogin, from, to)));
+        out.println(reporting.byCategory(wallet.periodExpenseByCategory(currentLogin, from, to), "Расходы по категориям"));
+    }
+
+    private void cmdSearch(String[] a) {
+        ensureAuth();
+        List<String> words = new ArrayList<>();
+        Set<String> cats = Set.of();
+        TxnType type = null;
+        Long min = null, max = null;
+        LocalDateTime from = null, to = null;
+        int limit = 20;
+        for (int i = 1; i < a.length; i++) {
+            switch (a[i]) {
+                case "--cat" -> cats = Arrays.stream(optionValue(a, ++i, "--cat").split(","))
+                        .map(String::trim).filter(s -> !s.isBlank()).collect(Collectors.toSet());
+                case "--type" -> type = parseType(optionValue(a, ++i, "--type"));
+                case "--min" -> min = parseAmount(optionValue(a, ++i, "--min"));
+                case "--max" -> max = parseAmount(optionValue(a, ++i, "--max"));
+                case "--from" -> from = parseDate(optionValue(a, ++i, "--from")).atStartOfDay();
+                case "--to" -> to = parseDate(optionValue(a, ++i, "--to")).plusDays(1).atStartOfDay();
+                case "--limit" -> limit = parseLimit(optionValue(a, ++i, "--limit"));
+                default -> {
+                    if (a[i].startsWith("--")) throw new IllegalArgumentException("Неизвестный параметр: " + a[i]);
+                    words.add(a[i]);
+                }
+            }
+        }
+        TransactionQuery q = new TransactionQuery(words.isEmpty() ? null : String.join(" ", words), cats, type, min, max, from, to);
+        SearchResult r = wallet.search(currentLogin, q, limit);
+        out.println("Найдено операций: " + r.matches() + " (доходы: " + Money.format(r.income())
+                + ", расходы: " + Money.format(r.expense()) + ")");
+        for (Transaction t : r.latest()) out.println(describe(t));
+        if (r.matches() > r.latest().size()) out.println("... показаны последние " + r.latest().size());
+    }
+
+    // курсор следующей страницы печатается в конце; с ним та же команда продолжает историю
+    private void cmdHistory(String[] a) {
+        ensureAuth();
+        Set<String> cats = Set.of();
+        TxnType type = null;
+        HistoryCursor after = null;
+        int limit = 20;
+        for (int i = 1; i < a.length; i++) {
+            switch (a[i]) {
+                case "--cat" -> cats = Arrays.stream(optionValue(a, ++i, "--cat").split(","))
+                        .map(String::trim).filter(s -> !s.isBlank()).collect(Collectors.toSet());
+                case "--type" -> type = parseType(optionValue(a, ++i, "--type"));
+                case "--limit" -> {
+                    limit = parsePositive(optionValue(a, ++i, "--limit"));
+                    if (limit > HistoryCollector.MAX_LIMIT) throw new IllegalArgumentException("Не больше " + HistoryCollector.MAX_LIMIT + " операций на странице");
+                }
+                case "--after" -> after = HistoryCursor.decode(optionValue(a, ++i, "--after"));
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + a[i]);
+            }
+        }
+        HistoryPage page = wallet.history(currentLogin, new HistoryFilter(type, cats), after, limit);
+        if (page.transactions().isEmpty()) out.println(after == null ? "Операций нет." : "Больше операций нет.");
+        for (Transaction t : page.transactions()) out.println(describe(t));
+        if (page.next() != null) out.println("Следующая страница: --after " + page.next().encode());
+    }
+
+    // отчёты по месяцам: по умолчанию расходы по всем категориям, месяцы отсчитываются от текущего
+    private void cmdTrend(String[] a) {
+        ensureAuth();
+        ReportOptions o = reportOptions(a);
+        int months = o.number(0, 12);
+        YearMonth to = YearMonth.now();
+        out.println(reporting.monthlyTrend(wallet.rollup(currentLogin), o.type(), o.category(), to.minusMonths(months - 1), to));
+    }
+
+    private void cmdYearOverYear(String[] a) {
+        ensureAuth();
+        ReportOptions o = reportOptions(a);
+        YearMonth now = YearMonth.now();
+        int year = o.number(0, now.getYear());
+        // текущий год сравнивается по прошедшие месяцы, прошлые — целиком
+        YearMonth through = year == now.getYear() ? now : YearMonth.of(year, 12);
+        out.println(reporting.yearOverYear(wallet.rollup(currentLogin), o.type(), through));
+    }
+
+    private void cmdRolling(String[] a) {
+        ensureAuth();
+        ReportOptions o = reportOptions(a);
+        int window = o.number(0, 3);
+        int months = o.number(1, 12);
+        YearMonth to = YearMonth.now();
+        out.println(reporting.rollingAverage(wallet.rollup(currentLogin), o.type(), o.category(), window,
+                to.minusMonths(months - 1), to));
+    }
+
+    private record ReportOptions(List<Integer> numbers, TxnType type, String category) {
+        int number(int i, int fallback) {
+            return i < numbers.size() ? numbers.get(i) : fallback;
+        }
+    }
+
+    private ReportOptions reportOptions(String[] a) {
+        List<Integer> numbers = new ArrayList<>();
+        TxnType type = TxnType.EXPENSE;
+        String category = null;
+        for (int i = 1; i < a.length; i++) {
+            switch (a[i]) {
+                case "--cat" -> category = optionValue(a, ++i, "--cat");
+                case "--type" -> type = parseType(optionValue(a, ++i, "--type"));
+                default -> {
+                    if (a[i].startsWith("--")) throw new IllegalArgumentException("Неизвестный параметр: " + a[i]);
+                    numbers.add(parsePositive(a[i]));
+                }
+            }
+        }
+        return new ReportOptions(numbers, type, category);
+    }
+
+    private static String describe(Transaction t) {
+        String cat = t.getCategory() == null ? Wallet.NO_CATEGORY : t.getCategory();
+        return t.getAt().format(LISTING_TIME) + "  " + (t.getType() == TxnType.INCOME ? "доход " : "расход")
+                + "  " + cat + "  " + Money.format(t.getAmount()) + (t.getNote() == null ? "" : "  " + t.getNote());
+    }
+
+    private void cmdRecurringAdd(String[] a) {
+        ensureAuth();
+        ensureArgs(a, 5, "recurring-add <income|expense> <category> <amount> <daily|weekly|monthly|yearly> [yyyy-mm-dd] [note]");
+        TxnType type = parseType(a[1]);
+        long amount = parseAmount(a[3]);
+        Frequency frequency = parseFrequency(a[4]);
+        LocalDateTime start = LocalDateTime.now();
+        int noteFrom = 5;
+        if (a.length > 5 && looksLikeDate(a[5])) {
+            start = parseDate(a[5]).atStartOfDay();
+            noteFrom = 6;
+        }
+        String note = a.length > noteFrom ? joinTail(a, noteFrom) : null;
+        RecurringRule r = core.recurring().add(currentLogin, type, a[2], amount, note, frequency, start);
+        out.println("Правило " + r.getId() + " добавлено, первое повторение: " + r.next().format(LISTING_TIME));
+    }
+
+    private void cmdRecurringList() {
+        ensureAuth();
+        List<RecurringRule> rules = core.recurring().rules(currentLogin);
+        if (rules.isEmpty()) { out.println("Повторяющихся операций нет."); return; }
+        for (RecurringRule r : rules) {
+            out.println(r.getId() + "  " + (r.getType() == TxnType.INCOME ? "доход " : "расход") + "  " + r.getCategory()
+                    + "  " + Money.format(r.getAmount()) + "  " + r.getFrequency().name().toLowerCase(Locale.ROOT)
+                    + "  следующее: " + r.next().format(LISTING_TIME) + "  проведено: " + r.getPosted()
+                    + (r.getNote() == null ? "" : "  " + r.getNote()));
+        }
+    }
+
+    private void cmdRecurringDelete(String[] a) {
+        ensureAuth();
+        ensureArgs(a, 2, "recurring-delete <id>");
+        int id;
+        try {
+            id = Integer.parseInt(a[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный номер правила: " + a[1]);
+        }
+        out.println(core.recurring().delete(currentLogin, id) ? "Правило удалено." : "Правило не найдено.");
     }
 
     private void cmdTransfer(String[] a) {
         ensureAuth();
         ensureArgs(a, 3, "transfer <toLogin> <amount> [note]");
         String to = a[1];
-        double amount = parseAmount(a[2]);
+        long amount = parseAmount(a[2]);
         String note = a.length >= 4 ? joinTail(a, 3) : "Перевод";
-        transfer.transfer(currentLogin, to, amount, note);
-        System.out.println("Перевод выполнен.");
+        List<BudgetEvent> events = transfer.transfer(currentLogin, to, amount, note);
+        out.println("Перевод выполнен.");
+        notifyBudget(events);
+    }
+
+    private void cmdExportCsv(String[] a) {
+        ensureAuth();
+        LocalDateTime from = null, to = null;
+        Set<String> cats = Set.of();
+        boolean gzip = false;
+        for (int i = 1; i < a.length; i++) {
+            switch (a[i]) {
+                case "--gzip" -> gzip = true;
+                case "--from" -> from = parseDate(optionValue(a, ++i, "--from")).atStartOfDay();
+                case "--to" -> to = parseDate(optionValue(a, ++i, "--to")).plusDays(1).atStartOfDay();
+                case "--cat" -> cats = Arrays.stream(optionValue(a, ++i, "--cat").split(","))
+                        .map(String::trim).filter(s -> !s.isBlank()).collect(Collectors.toSet());
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + a[i]);
+            }
+        }
+        if (from != null && to != null && from.isAfter(to)) throw new IllegalArgumentException("Начало периода позже конца");
+        CsvExporter.Filter filter = new CsvExporter.Filter(from, to, cats);
+        // под блокировкой только копируются строки, файл пишется уже без неё
+        TransactionStore selected = wallet.read(currentLogin, w -> CsvExporter.select(w, filter));
+        long rows;
+        try {
+            rows = fileStorage.exportCsv(currentLogin, selected, gzip);
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка экспорта CSV: " + e.getMessage(), e);
+        }
+        out.println("Экспортировано операций: " + rows + " в " + fileStorage.csvPath(currentLogin, gzip));
     }
 
-    private void cmdExportCsv() {
+    private void cmdImportCsv(String[] a) {
         ensureAuth();
-        var w = wallet.ensureWallet(currentLogin);
-        new FileStorage().exportCsv(w);
-        System.out.println("Экспортирован CSV в папку data/.");
+        // сетевой клиент не может читать произвольные файлы сервера — только свой экспорт в data/
+        if (mode == Mode.REMOTE && a.length >= 2) throw new IllegalArgumentException("В сетевой сессии путь не указывается");
+        Path p = a.length >= 2 ? Paths.get(joinTail(a, 1)) : defaultImportPath();
+        if (!Files.exists(p)) throw new IllegalArgumentException("Файл не найден: " + p);
+        CsvImporter.Result r;
+        try {
+            r = importer.importCsv(currentLogin, p);
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка чтения CSV: " + e.getMessage(), e);
+        }
+        out.println("Импортировано: " + r.imported() + ", дубликатов пропущено: " + r.duplicates() + ", ошибок: " + r.failed());
+        r.errors().forEach(out::println);
+    }
+
+    private Path defaultImportPath() {
+        Path csv = fileStorage.csvPath(currentLogin, false);
+        Path gz = fileStorage.csvPath(currentLogin, true);
+        return !Files.exists(csv) && Files.exists(gz) ? gz : csv;
     }
 
     private void cmdSave() {
         if (currentLogin == null) return;
-        var w = wallet.ensureWallet(currentLogin);
-        fileStorage.saveUserWallet(w);
-        System.out.println("Данные сохранены.");
+        // операции уже записаны в журнал, достаточно сбросить его на диск
+        try {
+            core.journal().sync(currentLogin);
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка сохранения: " + e.getMessage(), e);
+        }
+        out.println("Данные сохранены.");
     }
 
     private void ensureAuth() {
@@ -219,15 +616,61 @@ public class CommandLoop {
     private void ensureArgs(String[] a, int n, String usage) {
         if (a.length < n) throw new IllegalArgumentException("Использование: " + usage);
     }
-    private double parseAmount(String s) {
+    private long parseAmount(String s) {
         try {
-            double v = Double.parseDouble(s.replace(",", "."));
+            long v = Money.parse(s);
             if (v <= 0) throw new NumberFormatException();
             return v;
         } catch (NumberFormatException e) {
             throw new IllegalArgumentException("Некорректная сумма");
         }
     }
+    private TxnType parseType(String s) {
+        return switch (s.toLowerCase(Locale.ROOT)) {
+            case "income" -> TxnType.INCOME;
+            case "expense" -> TxnType.EXPENSE;
+            default -> throw new IllegalArgumentException("Тип операции: income или expense");
+        };
+    }
+    private Frequency parseFrequency(String s) {
+        try {
+            return Frequency.valueOf(s.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Частота: daily, weekly, monthly или yearly");
+        }
+    }
+    private static boolean looksLikeDate(String s) {
+        return s.length() == 10 && s.charAt(4) == '-' && s.charAt(7) == '-';
+    }
+    private int parseLimit(String s) {
+        try {
+            int v = Integer.parseInt(s);
+            if (v < 0) throw new NumberFormatException();
+            return v;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное число операций: " + s);
+        }
+    }
+    private int parsePositive(String s) {
+        try {
+            int v = Integer.parseInt(s);
+            if (v <= 0) throw new NumberFormatException();
+            return v;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Ожидалось положительное число: " + s);
+        }
+    }
+    private LocalDate parseDate(String s) {
+        try {
+            return LocalDate.parse(s);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Некорректная дата: " + s);
+        }
+    }
+    private String optionValue(String[] a, int i, String name) {
+        if (i >= a.length) throw new IllegalArgumentException("Не указано значение для " + name);
+        return a[i];
+    }
     private String joinTail(String[] a, int idx) {
         StringBuilder sb = new StringBuilder();
         for (int i = idx; i < a.length; i++) {
@@ -236,12 +679,34 @@ public class CommandLoop {
         }
         return sb.toString();
     }
-    private String[] parseArgs(String line) {
-        return line.split("\\s+");
+    // разбиение по пробельным символам без регулярных выражений
+    private static String[] parseArgs(String line) {
+        int n = line.length();
+        int count = 0;
+        for (int i = 0; i < n; ) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) i++;
+            if (i == n) break;
+            count++;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) i++;
+        }
+        String[] parts = new String[count];
+        int k = 0;
+        for (int i = 0; i < n; ) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) i++;
+            if (i == n) break;
+            int start = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) i++;
+            parts[k++] = line.substring(start, i);
+        }
+        return parts;
     }
 
-    private void notifyBudget(String cat) {
-        var alerts = wallet.alerts(currentLogin);
-        alerts.stream().filter(m -> m.contains("'" + cat + "'")).forEach(System.out::println);
+    // печатаются только пересечения порогов своим кошельком; в пакетном режиме оповещения не печатаются,
+    // их можно запросить командой alerts
+    private void notifyBudget(List<BudgetEvent> events) {
+        if (mode == Mode.BATCH) return;
+        for (BudgetEvent e : events) {
+            if (e.login().equals(currentLogin)) out.println(e.message());
+        }
     }
 }
@@ -0,0 +1,250 @@
+package Services;
+
+import Models.Money;
+import Models.TransactionStore;
+import Models.Wallet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+// Потоковый экспорт операций в CSV (id,type,category,amount,note,at).
+// Строки кодируются прямо в переиспользуемый байтовый буфер: числа, даты и UTF-8
+// пишутся вручную (дата — прямо из столбцов секунд и наносекунд), поэтому на строку не создаётся
+// ни одного временного объекта; исключение — редкие годы вне 0000–9999.
+public class CsvExporter {
+    public static final String HEADER = "id,type,category,amount,note,at\n";
+    private static final int BUFFER = 1 << 16;
+    // запас под одно поле фиксированной длины (id, сумма, дата)
+    private static final int RESERVE = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // годы 0000–9999 пишутся вручную, остальные (со знаком или пятью цифрами) — через LocalDateTime
+    private static final long MIN_SECOND = LocalDateTime.of(0, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final long MAX_SECOND = LocalDateTime.of(10_000, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+
+    // from включительно, to исключительно; null — без ограничения; пустой набор категорий — все
+    public record Filter(LocalDateTime from, LocalDateTime to, Set<String> categories) {
+        public static final Filter ALL = new Filter(null, null, Set.of());
+
+        boolean accepts(TransactionStore store, int row) {
+            if (categories.isEmpty()) return true;
+            String cat = store.category(row);
+            return categories.contains(cat == null ? Wallet.NO_CATEGORY : cat);
+        }
+    }
+
+    // строки для экспорта; вызывающий держит блокировку чтения кошелька только на время копирования,
+    // а запись файла идёт уже без неё
+    public static TransactionStore select(Wallet w, Filter filter) {
+        // при фильтре по датам идём только по нужным месяцам индекса, а не по всем операциям
+        TransactionStore store = w.store();
+        int[] rows = filter.from() != null || filter.to() != null
+                ? w.timeIndex().between(filter.from() == null ? LocalDateTime.MIN : filter.from(),
+                                        filter.to() == null ? LocalDateTime.MAX : filter.to())
+                : null;
+        int n = rows == null ? store.size() : rows.length;
+        int[] picked = new int[n];
+        int m = 0;
+        for (int k = 0; k < n; k++) {
+            int row = rows == null ? k : rows[k];
+            if (filter.accepts(store, row)) picked[m++] = row;
+        }
+        return w.copyRows(m == n ? picked : Arrays.copyOf(picked, m));
+    }
+
+    // все строки rows; файл пишется во временный и заменяется переименованием,
+    // поэтому неудачный экспорт не портит прежний
+    public long export(TransactionStore rows, Path file, boolean gzip) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = gzip
+                    ? new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER)
+                    : Files.newOutputStream(tmp)) {
+                Out out = new Out(os);
+                out.ascii(HEADER);
+                for (int row = 0; row < rows.size(); row++) writeRow(out, rows, row);
+                out.flush();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return rows.size();
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeRow(Out out, TransactionStore store, int row) throws IOException {
+        if (store.hasUuid(row)) out.uuid(store.idHi(row), store.idLo(row));
+        else out.text(store.id(row));
+        out.put(',');
+        out.ascii(store.type(row).name());
+        out.put(',');
+        out.field(store.category(row));
+        out.put(',');
+        out.money(store.amount(row));
+        out.put(',');
+        out.field(store.note(row));
+        out.put(',');
+        out.dateTime(store.epochSecond(row), store.nano(row));
+        out.put('\n');
+    }
+
+    private static final class Out {
+        private final OutputStream os;
+        private final byte[] buf = new byte[BUFFER];
+        private int pos;
+
+        Out(OutputStream os) { this.os = os; }
+
+        void put(char c) throws IOException {
+            if (pos == buf.length) flush();
+            buf[pos++] = (byte) c;
+        }
+
+        void ascii(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) put(s.charAt(i));
+        }
+
+        // поле CSV: кавычки только если внутри есть запятая, кавычка или перевод строки
+        void field(String s) throws IOException {
+            if (s == null) return;
+            boolean quote = false;
+            for (int i = 0; i < s.length() && !quote; i++) {
+                char c = s.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) { text(s); return; }
+            put('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"') put('"');
+                i = utf8(s, i);
+            }
+            put('"');
+        }
+
+        void text(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) i = utf8(s, i);
+        }
+
+        // кодирует символ (или суррогатную пару) с позиции i, возвращает индекс последнего прочитанного char
+        private int utf8(String s, int i) throws IOException {
+            char c = s.charAt(i);
+            if (c < 0x80) { put(c); return i; }
+            if (buf.length - pos < 4) flush();
+            if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                return i;
+            }
+            if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(i + 1));
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                return i + 1;
+            }
+            if (Character.isSurrogate(c)) c = '?';
+            buf[pos++] = (byte) (0xE0 | (c >> 12));
+            buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            return i;
+        }
+
+        // то же, что UUID.toString: 8-4-4-4-12 шестнадцатеричных цифр в нижнем регистре
+        void uuid(long hi, long lo) throws IOException {
+            reserve();
+            hex(hi >>> 32, 8);
+            buf[pos++] = '-';
+            hex(hi >>> 16, 4);
+            buf[pos++] = '-';
+            hex(hi, 4);
+            buf[pos++] = '-';
+            hex(lo >>> 48, 4);
+            buf[pos++] = '-';
+            hex(lo, 12);
+        }
+
+        private void hex(long v, int digits) {
+            for (int i = digits - 1; i >= 0; i--) buf[pos++] = (byte) HEX[(int) (v >>> (i * 4)) & 0xF];
+        }
+
+        // то же, что Money.toString: 123456 -> 1234.56
+        void money(long minor) throws IOException {
+            if (minor == Long.MIN_VALUE) { ascii(Money.toString(minor)); return; }
+            reserve();
+            if (minor < 0) { buf[pos++] = '-'; minor = -minor; }
+            digits(minor / Money.SCALE, 1);
+            buf[pos++] = '.';
+            digits(minor % Money.SCALE, 2);
+        }
+
+        // тот же вид, что LocalDateTime.toString, чтобы LocalDateTime.parse читал его при импорте.
+        // Дата считается из секунд эпохи целочисленно (как в LocalDate.ofEpochDay), без LocalDateTime на строку
+        void dateTime(long epochSecond, int nano) throws IOException {
+            if (epochSecond < MIN_SECOND || epochSecond >= MAX_SECOND) {
+                ascii(LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC).toString());
+                return;
+            }
+            reserve();
+            long days = Math.floorDiv(epochSecond, 86_400);
+            int secOfDay = Math.floorMod(epochSecond, 86_400);
+            // григорианский календарь с годом от 1 марта: високосный день — последний в году
+            long zeroDay = days + 719_528 - 60;
+            long era = Math.floorDiv(zeroDay, 146_097);
+            int dayOfEra = (int) (zeroDay - era * 146_097);
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int marchMonth = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * marchMonth + 2) / 5 + 1;
+            int month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+            long year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+            digits(year, 4);
+            buf[pos++] = '-';
+            digits(month, 2);
+            buf[pos++] = '-';
+            digits(day, 2);
+            buf[pos++] = 'T';
+            digits(secOfDay / 3600, 2);
+            buf[pos++] = ':';
+            digits(secOfDay / 60 % 60, 2);
+            int sec = secOfDay % 60;
+            if (sec == 0 && nano == 0) return;
+            buf[pos++] = ':';
+            digits(sec, 2);
+            if (nano == 0) return;
+            buf[pos++] = '.';
+            if (nano % 1_000_000 == 0) digits(nano / 1_000_000, 3);
+            else if (nano % 1000 == 0) digits(nano / 1000, 6);
+            else digits(nano, 9);
+        }
+
+        // неотрицательное число с дополнением нулями слева до width знаков
+        private void digits(long v, int width) {
+            int n = 1;
+            for (long x = v; x >= 10; x /= 10) n++;
+            if (n < width) n = width;
+            for (int i = pos + n - 1; i >= pos; i--) {
+                buf[i] = (byte) ('0' + v % 10);
+                v /= 10;
+            }
+            pos += n;
+        }
+
+        private void reserve() throws IOException {
+            if (buf.length - pos < RESERVE) flush();
+        }
+
+        void flush() throws IOException {
+            os.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package Services;
+
+import Enums.TxnType;
+import Models.Money;
+import Models.Transaction;
+import Models.TransactionStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+// Импорт операций из CSV в формате exportCsv (id,type,category,amount,note,at).
+// Файл читается потоково пачками; строки пачки разбираются и проверяются параллельно,
+// затем пачка добавляется в кошелёк одной операцией (одна блокировка, одна запись журнала).
+public class CsvImporter {
+    private static final int BATCH = 10_000;
+    private static final int MAX_REPORTED_ERRORS = 10;
+    // поле в кавычках с переводами строк: дальше стольких строк и символов незакрытая кавычка
+    // считается ошибкой записи, а не длинной заметкой
+    private static final int MAX_RECORD_LINES = 100;
+    private static final int MAX_RECORD_CHARS = 1 << 16;
+
+    private final WalletService wallets;
+
+    public CsvImporter(WalletService wallets) {
+        this.wallets = wallets;
+    }
+
+    public record Result(long imported, long duplicates, long failed, List<String> errors) {}
+
+    // результат разбора одной строки: транзакция или текст ошибки
+    private record Row(long line, Transaction txn, String error) {}
+
+    public Result importCsv(String login, Path file) throws IOException {
+        // повторный импорт собственного экспорта не должен удваивать операции
+        KnownIds known = wallets.read(login, w -> {
+            TransactionStore store = w.store();
+            KnownIds ids = new KnownIds(store.size());
+            for (int i = 0; i < store.size(); i++) {
+                if (store.hasUuid(i)) ids.add(store.idHi(i), store.idLo(i));
+                else ids.custom.add(store.id(i));
+            }
+            return ids;
+        });
+        Stats stats = new Stats();
+        List<String> lines = new ArrayList<>(BATCH);
+        long[] numbers = new long[BATCH];
+        // строки, прочитанные вперёд в поисках закрывающей кавычки и возвращённые, когда её не нашлось
+        Deque<String> pushedBack = new ArrayDeque<>();
+        try (BufferedReader br = open(file)) {
+            String line;
+            long lineNo = 0;
+            while ((line = next(pushedBack, br)) != null) {
+                long start = ++lineNo;
+                if (start == 1 && line.startsWith("id,type,")) continue;
+                // кавычки не закрыты — поле продолжается на следующих строках
+                if (unbalanced(line)) {
+                    StringBuilder record = new StringBuilder(line);
+                    List<String> continued = new ArrayList<>();
+                    boolean open = true;
+                    while (open && continued.size() < MAX_RECORD_LINES && record.length() < MAX_RECORD_CHARS) {
+                        String next = next(pushedBack, br);
+                        if (next == null) break;
+                        continued.add(next);
+                        record.append('\n').append(next);
+                        if (unbalanced(next)) open = false;
+                    }
+                    if (open) {
+                        // ошибочна только начальная строка; следующие разбираются как отдельные записи
+                        for (int k = continued.size() - 1; k >= 0; k--) pushedBack.addFirst(continued.get(k));
+                    } else {
+                        lineNo += continued.size();
+                        line = record.toString();
+                    }
+                }
+                if (line.isBlank()) continue;
+                numbers[lines.size()] = start;
+                lines.add(line);
+                if (lines.size() == BATCH) {
+                    importBatch(login, lines, numbers, known, stats);
+                    lines.clear();
+                }
+            }
+        }
+        if (!lines.isEmpty()) importBatch(login, lines, numbers, known, stats);
+        return new Result(stats.imported, stats.duplicates, stats.failed, stats.errors);
+    }
+
+    private static String next(Deque<String> pushedBack, BufferedReader br) throws IOException {
+        return pushedBack.isEmpty() ? br.readLine() : pushedBack.pollFirst();
+    }
+
+    // сжатый экспорт (export-csv --gzip) читается без распаковки на диск
+    private static BufferedReader open(Path file) throws IOException {
+        if (!file.getFileName().toString().endsWith(".gz")) return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file), 1 << 16), StandardCharsets.UTF_8));
+    }
+
+    private static final class Stats {
+        long imported, duplicates, failed;
+        final List<String> errors = new ArrayList<>();
+    }
+
+    // id, уже известные кошельку: UUID — парой long в таблице с открытой адресацией, без строки и объекта
+    // на операцию (как колонки idHi/idLo хранилища); строками хранятся только редкие id не в виде UUID
+    private static final class KnownIds {
+        final Set<String> custom = new HashSet<>();
+        private long[] hi;
+        private long[] lo;
+        private boolean[] used;
+        private int size;
+
+        KnownIds(int expected) {
+            int cap = 16;
+            while (cap < 2L * expected && cap < 1 << 30) cap <<= 1;
+            hi = new long[cap];
+            lo = new long[cap];
+            used = new boolean[cap];
+        }
+
+        boolean add(Transaction t) {
+            return t.hasUuid() ? add(t.idHi(), t.idLo()) : custom.add(t.getId());
+        }
+
+        // false — такой id уже был
+        boolean add(long h, long l) {
+            int mask = used.length - 1;
+            int i = slot(h, l, mask);
+            while (used[i]) {
+                if (hi[i] == h && lo[i] == l) return false;
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            hi[i] = h;
+            lo[i] = l;
+            if (++size * 2 > used.length) grow();
+            return true;
+        }
+
+        private void grow() {
+            long[] oldHi = hi, oldLo = lo;
+            boolean[] oldUsed = used;
+            hi = new long[oldUsed.length * 2];
+            lo = new long[hi.length];
+            used = new boolean[hi.length];
+            int mask = used.length - 1;
+            for (int k = 0; k < oldUsed.length; k++) {
+                if (!oldUsed[k]) continue;
+                int i = slot(oldHi[k], oldLo[k], mask);
+                while (used[i]) i = (i + 1) & mask;
+                used[i] = true;
+                hi[i] = oldHi[k];
+                lo[i] = oldLo[k];
+            }
+        }
+
+        private static int slot(long h, long l, int mask) {
+            long x = (h ^ Long.rotateLeft(l, 32)) * 0x9E3779B97F4A7C15L;
+            return (int) (x ^ (x >>> 32)) & mask;
+        }
+    }
+
+    private void importBatch(String login, List<String> lines, long[] numbers, KnownIds known, Stats stats) {
+        Row[] rows = new Row[lines.size()];
+        IntStream.range(0, rows.length).parallel().forEach(i -> rows[i] = parse(numbers[i], lines.get(i)));
+        List<Transaction> valid = new ArrayList<>(rows.length);
+        for (Row r : rows) {
+            if (r.error != null) {
+                stats.failed++;
+                if (stats.errors.size() < MAX_REPORTED_ERRORS) stats.errors.add("строка " + r.line + ": " + r.error);
+            } else if (!known.add(r.txn)) {
+                stats.duplicates++;
+            } else {
+                valid.add(r.txn);
+            }
+        }
+        wallets.addTransactions(login, valid);
+        stats.imported += valid.size();
+    }
+
+    private static Row parse(long line, String s) {
+        String[] f = split(s);
+        if (f == null) return new Row(line, null, "незакрытые кавычки");
+        if (f.length != 6) return new Row(line, null, "ожидалось 6 полей");
+        TxnType type;
+        try {
+            type = TxnType.valueOf(f[1].trim());
+        } catch (IllegalArgumentException e) {
+            return new Row(line, null, "неизвестный тип " + f[1]);
+        }
+        long amount;
+        try {
+            amount = Money.parse(f[3].trim());
+        } catch (NumberFormatException e) {
+            return new Row(line, null, "некорректная сумма " + f[3]);
+        }
+        if (amount <= 0) return new Row(line, null, "сумма должна быть > 0");
+        LocalDateTime at;
+        try {
+            at = LocalDateTime.parse(f[5].trim());
+        } catch (DateTimeParseException e) {
+            return new Row(line, null, "некорректная дата " + f[5]);
+        }
+        String id = f[0].isBlank() ? UUID.randomUUID().toString() : f[0].trim();
+        String category = f[2].isBlank() ? null : f[2];
+        String note = f[4].isEmpty() ? null : f[4];
+        return new Row(line, new Transaction(id, type, category, amount, note, at), null);
+    }
+
+    private static boolean unbalanced(String s) {
+        int quotes = 0;
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) == '"') quotes++;
+        return (quotes & 1) == 1;
+    }
+
+    // разбор строки CSV с полями в кавычках и удвоенными кавычками внутри
+    private static String[] split(String s) {
+        List<String> out = new ArrayList<>(6);
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < s.length() && s.charAt(i + 1) == '"') { sb.append('"'); i++; }
+                    else quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        if (quoted) return null;
+        out.add(sb.toString());
+        return out.toArray(new String[0]);
+    }
+}
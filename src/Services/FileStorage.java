@@ -1,165 +1,425 @@
 package Services;
 
 import Enums.TxnType;
+import Models.FrozenWallet;
+import Models.HistoryCollector;
+import Models.HistoryCursor;
+import Models.JournalMark;
+import Models.MonthlyRollup;
 import Models.Transaction;
+import Models.TransactionStore;
+import Models.User;
 import Models.Wallet;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
+import java.util.HashSet;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
 
 public class FileStorage {
-    private final Path dir = Paths.get("data");
+    // формат снимка кошелька: текстовый JSON или колоночный бинарный файл
+    public enum Format {
+        JSON, COLUMNAR;
+
+        public static Format parse(String s) {
+            return s != null && s.equalsIgnoreCase("columnar") ? COLUMNAR : JSON;
+        }
+    }
+
+    // кошелёк из снимка и отметка, докуда в нём учтён журнал
+    public record Snapshot(Wallet wallet, JournalMark journal) {}
+
+    private final Path dir;
+    private final Format format;
+    private final ColumnarStorage columnar;
+    private final RollupStorage rollups;
+    private final CsvExporter csv = new CsvExporter();
+
+    private static final Histogram LOAD_TIME = Metrics.timer("storage.load");
+    private static final Histogram LOAD_BYTES = Metrics.histogram("storage.load.bytes");
+    private static final Histogram SAVE_TIME = Metrics.timer("storage.save");
+    private static final Histogram SAVE_BYTES = Metrics.histogram("storage.save.bytes");
+    private static final LongAdder LOAD_ERRORS = Metrics.counter("errors.storage.load");
+    private static final LongAdder SAVE_ERRORS = Metrics.counter("errors.storage.save");
+    private static final LongAdder ROLLUP_ERRORS = Metrics.counter("errors.storage.rollup");
+
+    // логин становится частью имени файла, поэтому проверяется и здесь, а не только при регистрации
+    static Path file(Path dir, String login, String suffix) {
+        if (!User.isValidLogin(login)) throw new IllegalArgumentException("Некорректный логин");
+        return dir.resolve(login + suffix);
+    }
+
+    public Path dir() { return dir; }
+    public Format format() { return format; }
 
     public FileStorage() {
+        this(Format.JSON);
+    }
+
+    public FileStorage(Format format) {
+        this(Paths.get("data"), format);
+    }
+
+    public FileStorage(Path dir, Format format) {
+        this.dir = dir;
+        this.format = format;
+        this.columnar = new ColumnarStorage(dir);
+        this.rollups = new RollupStorage(dir);
         try { Files.createDirectories(dir); } catch (IOException ignored) {}
     }
 
-    public void saveUserWallet(Wallet w) {
-        // JSON для транзакций + бюджетов
-        Path p = dir.resolve(w.getOwnerLogin() + ".json");
-        try (BufferedWriter bw = Files.newBufferedWriter(p)) {
-            String txns = w.getTransactions().stream().map(t ->
-                    String.format(Locale.US,
-                            "{\"id\":\"%s\",\"type\":\"%s\",\"category\":%s,\"amount\":%.2f,\"note\":%s,\"at\":\"%s\"}",
-                            t.getId(), t.getType().name(),
-                            t.getCategory()==null? "null" : "\"" + escape(t.getCategory()) + "\"",
-                            t.getAmount(),
-                            t.getNote()==null? "null" : "\"" + escape(t.getNote()) + "\"",
-                            t.getAt().toString()
-                    )
-            ).collect(Collectors.joining(","));
-            String budgets = w.getBudgets().entrySet().stream().map(e ->
-                    String.format(Locale.US, "{\"category\":\"%s\",\"limit\":%.2f}", escape(e.getKey()), e.getValue().getLimit())
-            ).collect(Collectors.joining(","));
-            String json = "{"
-                    + "\"owner\":\"" + escape(w.getOwnerLogin()) + "\","
-                    + "\"transactions\":[" + txns + "],"
-                    + "\"budgets\":[" + budgets + "]"
-                    + "}";
-            bw.write(json);
+    public boolean saveUserWallet(Wallet w) {
+        return saveUserWallet(w, JournalMark.NONE);
+    }
+
+    // mark — докуда журнал учтён в снимке: после сбоя между записью снимка и обрезкой журнала
+    // эти записи не проигрываются второй раз
+    public boolean saveUserWallet(Wallet w, JournalMark mark) {
+        return saveUserWallet(w.freeze(), mark);
+    }
+
+    public boolean saveUserWallet(FrozenWallet w, JournalMark mark) {
+        long start = System.nanoTime();
+        if (!(format == Format.JSON ? saveJson(w, mark) : saveColumnar(w, mark))) {
+            SAVE_ERRORS.increment();
+            return false;
+        }
+        SAVE_TIME.time(start);
+        Path snapshot = snapshotPath(format, w.ownerLogin());
+        SAVE_BYTES.record(size(snapshot));
+        saveRollup(w.ownerLogin(), w.rollup(), snapshot);
+        return true;
+    }
+
+    // итоги выводимы из снимка: ошибка их записи снимок не отменяет, читатель тогда пересчитает их сам
+    private void saveRollup(String login, MonthlyRollup r, Path snapshot) {
+        try {
+            rollups.save(login, r, snapshot);
+        } catch (IOException e) {
+            ROLLUP_ERRORS.increment();
+            System.err.println("Ошибка записи итогов: " + e.getMessage());
+        }
+    }
+
+    // итоги, посчитанные по текущему снимку (без журнала); нет снимка — нет и операций до журнала
+    public void saveRollup(String login, MonthlyRollup r) {
+        currentSnapshot(login).ifPresent(p -> saveRollup(login, r, p));
+    }
+
+    // итоги текущего снимка без его чтения; пусто — файла итогов нет или он от другого снимка
+    public Optional<MonthlyRollup> loadRollup(String login) {
+        Optional<Path> snapshot = currentSnapshot(login);
+        if (snapshot.isEmpty()) return Optional.of(new MonthlyRollup());
+        try {
+            return rollups.load(login, snapshot.get());
+        } catch (IOException e) {
+            ROLLUP_ERRORS.increment();
+            System.err.println("Ошибка чтения итогов: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // тот же выбор файла, что и в loadUserWallet
+    private Optional<Path> currentSnapshot(String login) {
+        Path p = snapshotPath(format, login);
+        if (Files.exists(p)) return Optional.of(p);
+        p = snapshotPath(format == Format.JSON ? Format.COLUMNAR : Format.JSON, login);
+        return Files.exists(p) ? Optional.of(p) : Optional.empty();
+    }
+
+    private boolean saveColumnar(FrozenWallet w, JournalMark mark) {
+        try {
+            columnar.save(w, mark);
+            syncDir();
+            return true;
         } catch (IOException e) {
             System.err.println("Ошибка записи файла: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // переименование в каталоге тоже должно дойти до диска раньше усечения журнала
+    void syncDir() {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+            // не все ФС позволяют открыть каталог; тогда остаётся гарантия самого переименования
         }
     }
 
+    // файл в другом формате читается как запасной вариант, чтобы переход между форматами не терял данные
     public Optional<Wallet> loadUserWallet(String login) {
-        Path p = dir.resolve(login + ".json");
-        if (!Files.exists(p)) return Optional.empty();
+        return loadSnapshot(login).map(Snapshot::wallet);
+    }
+
+    public Optional<Snapshot> loadSnapshot(String login) {
+        Optional<Snapshot> w = load(format, login);
+        return w.isPresent() ? w : load(format == Format.JSON ? Format.COLUMNAR : Format.JSON, login);
+    }
+
+    // отметка журнала текущего снимка без чтения операций: у JSON она записана перед ними
+    public JournalMark journalMark(String login) {
+        Optional<Path> snapshot = currentSnapshot(login);
+        if (snapshot.isEmpty()) return JournalMark.NONE;
         try {
-            String json = Files.readString(p);
-            Wallet w = new Wallet(login);
-            String txBlock = extractArray(json, "transactions");
-            if (txBlock != null && !txBlock.isBlank()) {
-                String[] items = splitTopLevel(txBlock);
-                for (String it : items) {
-                    String type = extractString(it, "type");
-                    String category = extractNullableString(it, "category");
-                    double amount = extractDouble(it, "amount");
-                    String note = extractNullableString(it, "note");
-                    String at = extractString(it, "at");
-                    w.addTransaction(new Transaction(TxnType.valueOf(type), category, amount, note, LocalDateTime.parse(at)));
+            if (snapshot.get().equals(columnar.path(login))) return columnar.journalMark(login);
+            try (JsonStreamReader jr = new JsonStreamReader(Files.newBufferedReader(snapshot.get(), StandardCharsets.UTF_8))) {
+                jr.beginObject();
+                while (jr.hasNext()) {
+                    switch (jr.nextName()) {
+                        case "journal" -> { return readJournalMark(jr); }
+                        case "transactions" -> { return JournalMark.NONE; }
+                        default -> jr.skipValue();
+                    }
                 }
+                return JournalMark.NONE;
             }
-            String budBlock = extractArray(json, "budgets");
-            if (budBlock != null && !budBlock.isBlank()) {
-                String[] items = splitTopLevel(budBlock);
-                for (String it : items) {
-                    String category = extractString(it, "category");
-                    double limit = extractDouble(it, "limit");
-                    w.setBudget(category, limit);
+        } catch (Exception e) {
+            LOAD_ERRORS.increment();
+            throw new IllegalStateException("Ошибка чтения файла: " + e.getMessage(), e);
+        }
+    }
+
+    private Optional<Snapshot> load(Format f, String login) {
+        long start = System.nanoTime();
+        Optional<Snapshot> w = f == Format.JSON ? loadJson(login) : loadColumnar(login);
+        if (w.isPresent()) {
+            LOAD_TIME.time(start);
+            LOAD_BYTES.record(size(snapshotPath(f, login)));
+        }
+        return w;
+    }
+
+    private Path snapshotPath(Format f, String login) {
+        return f == Format.JSON ? file(dir, login, ".json") : columnar.path(login);
+    }
+
+    private static long size(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Optional<Snapshot> loadColumnar(String login) {
+        try {
+            return columnar.load(login);
+        } catch (Exception e) {
+            LOAD_ERRORS.increment();
+            System.err.println("Ошибка чтения файла: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // страница истории прямо из файла снимка, без сборки кошелька. Колоночный файл упорядочен по времени,
+    // и читается только хвост до заполнения страницы; JSON читается одним потоковым проходом,
+    // в памяти — не больше страницы операций. removed — id операций, отменённых в журнале
+    public void history(String login, HistoryCollector c, Set<String> removed) {
+        Optional<Path> snapshot = currentSnapshot(login);
+        if (snapshot.isEmpty()) return;
+        try {
+            if (snapshot.get().equals(columnar.path(login))) {
+                Set<UUID> keys = new HashSet<>();
+                for (String id : removed) keys.add(HistoryCursor.idKey(id));
+                columnar.history(login, c, keys);
+            } else {
+                jsonHistory(snapshot.get(), c, removed);
+            }
+        } catch (Exception e) {
+            LOAD_ERRORS.increment();
+            throw new IllegalStateException("Ошибка чтения файла: " + e.getMessage(), e);
+        }
+    }
+
+    private static void jsonHistory(Path p, HistoryCollector c, Set<String> removed) throws IOException {
+        try (JsonStreamReader jr = new JsonStreamReader(Files.newBufferedReader(p, StandardCharsets.UTF_8))) {
+            jr.beginObject();
+            while (jr.hasNext()) {
+                if (!jr.nextName().equals("transactions")) {
+                    jr.skipValue();
+                    continue;
                 }
+                jr.beginArray();
+                while (jr.hasNext()) {
+                    Transaction t = readTransaction(jr);
+                    if (removed.isEmpty() || !removed.contains(t.getId())) c.offer(t);
+                }
+                jr.endArray();
+            }
+            jr.endObject();
+        }
+    }
+
+    private boolean saveJson(FrozenWallet w, JournalMark mark) {
+        // JSON для транзакций + бюджетов, пишется потоково по одной транзакции во временный файл,
+        // который атомарно заменяет снимок: сбой посреди записи не портит предыдущий снимок
+        Path p = file(dir, w.ownerLogin(), ".json");
+        Path tmp;
+        try {
+            tmp = Files.createTempFile(dir, p.getFileName().toString(), ".tmp");
+        } catch (IOException e) {
+            System.err.println("Ошибка записи файла: " + e.getMessage());
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             JsonStreamWriter jw = new JsonStreamWriter(new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8)))) {
+            jw.beginObject();
+            jw.name("owner").value(w.ownerLogin());
+            jw.name("journal").beginObject()
+                    .name("generation").value(mark.generation())
+                    .name("offset").value(mark.offset())
+                    .endObject();
+            jw.name("transactions").beginArray();
+            TransactionStore txns = w.store();
+            for (int i = 0; i < txns.size(); i++) {
+                jw.beginObject()
+                        .name("id").value(txns.id(i))
+                        .name("type").value(txns.type(i).name())
+                        .name("category").value(txns.category(i))
+                        .name("amount").valueMinor(txns.amount(i))
+                        .name("note").value(txns.note(i))
+                        .name("at").value(txns.at(i).toString())
+                        .endObject();
             }
-            return Optional.of(w);
+            jw.endArray();
+            jw.name("budgets").beginArray();
+            for (var e : w.budgets().entrySet()) {
+                jw.beginObject()
+                        .name("category").value(e.getKey())
+                        .name("limit").valueMinor(e.getValue().getLimit())
+                        .endObject();
+            }
+            jw.endArray();
+            jw.endObject();
+            jw.flush();
+            // снимок должен быть на диске до того, как журнал будет усечён
+            ch.force(false);
+        } catch (IOException e) {
+            System.err.println("Ошибка записи файла: " + e.getMessage());
+            deleteQuietly(tmp);
+            return false;
+        }
+        try {
+            Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            syncDir();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Ошибка записи файла: " + e.getMessage());
+            deleteQuietly(tmp);
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) {
+            // остаётся мусорный временный файл; снимок от этого не страдает
+        }
+    }
+
+    private Optional<Snapshot> loadJson(String login) {
+        Path p = file(dir, login, ".json");
+        if (!Files.exists(p)) return Optional.empty();
+        try (JsonStreamReader jr = new JsonStreamReader(Files.newBufferedReader(p, StandardCharsets.UTF_8))) {
+            Wallet w = new Wallet(login);
+            JournalMark mark = JournalMark.NONE;
+            jr.beginObject();
+            while (jr.hasNext()) {
+                switch (jr.nextName()) {
+                    case "journal" -> mark = readJournalMark(jr);
+                    case "transactions" -> {
+                        jr.beginArray();
+                        while (jr.hasNext()) w.addTransaction(readTransaction(jr));
+                        jr.endArray();
+                    }
+                    case "budgets" -> {
+                        jr.beginArray();
+                        while (jr.hasNext()) readBudget(jr, w);
+                        jr.endArray();
+                    }
+                    default -> jr.skipValue();
+                }
+            }
+            jr.endObject();
+            return Optional.of(new Snapshot(w, mark));
         } catch (Exception e) {
+            LOAD_ERRORS.increment();
             System.err.println("Ошибка чтения файла: " + e.getMessage());
             return Optional.empty();
         }
     }
 
-    public void exportCsv(Wallet w) {
-        Path p = dir.resolve(w.getOwnerLogin() + "-txns.csv");
-        try (BufferedWriter bw = Files.newBufferedWriter(p)) {
-            bw.write("id,type,category,amount,note,at\n");
-            for (var t : w.getTransactions()) {
-                bw.write(String.join(",",
-                        t.getId(),
-                        t.getType().name(),
-                        safeCsv(t.getCategory()),
-                        String.valueOf(t.getAmount()),
-                        safeCsv(t.getNote()),
-                        t.getAt().toString()));
-                bw.write("\n");
+    private static Transaction readTransaction(JsonStreamReader jr) throws IOException {
+        String id = null, type = null, category = null, note = null, at = null;
+        long amount = 0;
+        jr.beginObject();
+        while (jr.hasNext()) {
+            switch (jr.nextName()) {
+                case "id" -> id = jr.nextNullableString();
+                case "type" -> type = jr.nextString();
+                // строка категории временная: транзакция хранит номер в общем словаре
+                case "category" -> category = jr.nextNullableString();
+                case "amount" -> amount = jr.nextMinor();
+                case "note" -> note = jr.nextNullableString();
+                case "at" -> at = jr.nextString();
+                default -> jr.skipValue();
             }
-        } catch (IOException e) {
-            System.err.println("Ошибка экспорта CSV: " + e.getMessage());
-        }
-    }
-
-    private static String escape(String s) { return s.replace("\\", "\\\\").replace("\"","\\\""); }
-    private static String safeCsv(String s) {
-        if (s == null) return "";
-        if (s.contains(",") || s.contains("\"")) return "\"" + s.replace("\"","\"\"") + "\"";
-        return s;
-    }
-
-    private static String extractArray(String json, String key) {
-        String marker = "\"" + key + "\":[";
-        int i = json.indexOf(marker);
-        if (i < 0) return null;
-        int start = i + marker.length();
-        int depth = 1;
-        for (int j = start; j < json.length(); j++) {
-            char c = json.charAt(j);
-            if (c == '[') depth++;
-            if (c == ']') depth--;
-            if (depth == 0) return json.substring(start, j);
-        }
-        return null;
-    }
-    private static String extractString(String obj, String key) {
-        String marker = "\"" + key + "\":\"";
-        int i = obj.indexOf(marker);
-        if (i < 0) return null;
-        int start = i + marker.length();
-        int end = obj.indexOf("\"", start);
-        return obj.substring(start, end).replace("\\\"","\"").replace("\\\\","\\");
-    }
-    private static String extractNullableString(String obj, String key) {
-        String marker1 = "\"" + key + "\":null";
-        if (obj.contains(marker1)) return null;
-        return extractString(obj, key);
-    }
-    private static double extractDouble(String obj, String key) {
-        String marker = "\"" + key + "\":";
-        int i = obj.indexOf(marker);
-        if (i < 0) return 0;
-        int start = i + marker.length();
-        int end = start;
-        while (end < obj.length() && "0123456789.-".indexOf(obj.charAt(end)) >= 0) end++;
-        return Double.parseDouble(obj.substring(start, end));
-    }
-    private static String[] splitTopLevel(String arrayContent) {
-        List<String> out = new ArrayList<>();
-        int depth = 0, start = 0;
-        for (int i = 0; i < arrayContent.length(); i++) {
-            char c = arrayContent.charAt(i);
-            if (c == '{') {
-                if (depth == 0) start = i;
-                depth++;
-            } else if (c == '}') {
-                depth--;
-                if (depth == 0) out.add(arrayContent.substring(start, i+1));
+        }
+        jr.endObject();
+        if (type == null || at == null) throw new IOException("Неполная запись транзакции");
+        if (id == null) return new Transaction(TxnType.valueOf(type), category, amount, note, LocalDateTime.parse(at));
+        return new Transaction(id, TxnType.valueOf(type), category, amount, note, LocalDateTime.parse(at));
+    }
+
+    private static JournalMark readJournalMark(JsonStreamReader jr) throws IOException {
+        long generation = 0, offset = 0;
+        jr.beginObject();
+        while (jr.hasNext()) {
+            switch (jr.nextName()) {
+                case "generation" -> generation = jr.nextLong();
+                case "offset" -> offset = jr.nextLong();
+                default -> jr.skipValue();
             }
         }
-        return out.toArray(new String[0]);
+        jr.endObject();
+        return new JournalMark(generation, offset);
+    }
+
+    private static void readBudget(JsonStreamReader jr, Wallet w) throws IOException {
+        String category = null;
+        long limit = 0;
+        jr.beginObject();
+        while (jr.hasNext()) {
+            switch (jr.nextName()) {
+                case "category" -> category = jr.nextString();
+                case "limit" -> limit = jr.nextMinor();
+                default -> jr.skipValue();
+            }
+        }
+        jr.endObject();
+        if (category != null) w.setBudget(category, limit);
+    }
+
+    // rows — копия из CsvExporter.select; блокировка кошелька не нужна. Возвращает число выгруженных операций
+    public long exportCsv(String login, TransactionStore rows, boolean gzip) throws IOException {
+        return csv.export(rows, csvPath(login, gzip), gzip);
+    }
+
+    public Path csvPath(String login, boolean gzip) {
+        return file(dir, login, gzip ? "-txns.csv.gz" : "-txns.csv");
     }
 }
@@ -0,0 +1,90 @@
+package Services;
+
+import Interfaces.IUserRepository;
+import Interfaces.IWalletRepository;
+import Repositories.FileRecurringRuleRepository;
+import Repositories.FileUserRepository;
+import Repositories.LazyWalletRepository;
+
+import java.nio.file.Paths;
+
+// Общее ядро приложения: хранилище, репозитории и сервисы в одном экземпляре на JVM.
+// Консоль и каждая сетевая сессия (см. FinanceServer) работают поверх одного ядра.
+public class FinanceCore implements AutoCloseable {
+    private final FileStorage fileStorage;
+    private final WalletJournal journal;
+    private final IUserRepository userRepo;
+    private final IWalletRepository walletRepo;
+    private final LazyWalletRepository walletCache;
+    private final PersistenceScheduler persistence;
+    private final AuthService auth;
+    private final WalletService wallet;
+    private final ReportingService reporting;
+    private final TransferService transfer;
+    private final CsvImporter importer;
+    private final AnalyticsService analytics;
+    private final RecurringScheduler recurring;
+    private final Metrics.FileDump metricsDump;
+
+    public FinanceCore() {
+        this.fileStorage = new FileStorage(FileStorage.Format.parse(System.getProperty("storage")));
+        this.journal = new WalletJournal(fileStorage);
+        this.userRepo = new FileUserRepository(fileStorage.dir().resolve("users.db"));
+        StripedLocks locks = new StripedLocks(64);
+        // в памяти держится не больше -Dwallets.max кошельков и примерно -Dwallets.maxMb мегабайт
+        long maxBytes = Long.getLong("wallets.maxMb", Runtime.getRuntime().maxMemory() / 4 / (1 << 20)) << 20;
+        LazyWalletRepository lazy = new LazyWalletRepository(journal::recover, journal::release,
+                login -> locks.get(login).writeLock(), Integer.getInteger("wallets.max", 10_000), maxBytes);
+        this.walletRepo = lazy;
+        this.walletCache = lazy;
+        this.auth = new AuthService(userRepo);
+        this.persistence = new PersistenceScheduler(journal, Long.getLong("persist.windowMs", 1000));
+        this.wallet = new WalletService(walletRepo, journal, locks, persistence);
+        this.reporting = new ReportingService();
+        this.transfer = new TransferService(wallet);
+        this.importer = new CsvImporter(wallet);
+        this.analytics = new AnalyticsService(wallet, userRepo);
+        persistence.start(wallet::compact);
+        this.recurring = new RecurringScheduler(wallet, new FileRecurringRuleRepository(fileStorage.dir().resolve("recurring.db")));
+        // пропущенные за время простоя повторения догоняются первым проходом
+        recurring.start();
+
+        Metrics.gauge("wallets.resident", lazy::resident);
+        Metrics.gauge("wallets.loads", lazy::loads);
+        Metrics.gauge("wallets.evictions", lazy::evictions);
+        Metrics.gauge("wallets.bytes", lazy::estimatedBytes);
+        Metrics.gauge("persistence.pending", persistence::pending);
+        Metrics.gauge("persistence.groups", persistence::groups);
+        Metrics.gauge("persistence.flushedWallets", persistence::flushedWallets);
+        Metrics.gauge("auth.sessions", auth::activeSessions);
+        Metrics.gauge("auth.queued", () -> auth.hashingMetrics().queued());
+        // -Dmetrics.file: снимок показателей в файл раз в -Dmetrics.intervalSeconds секунд
+        String metricsFile = System.getProperty("metrics.file");
+        this.metricsDump = metricsFile == null ? null
+                : Metrics.dumpTo(Paths.get(metricsFile), Long.getLong("metrics.intervalSeconds", 10));
+    }
+
+    public FileStorage fileStorage() { return fileStorage; }
+    public WalletJournal journal() { return journal; }
+    public IUserRepository users() { return userRepo; }
+    public IWalletRepository wallets() { return walletRepo; }
+    public PersistenceScheduler persistence() { return persistence; }
+    public AuthService auth() { return auth; }
+    public WalletService wallet() { return wallet; }
+    public ReportingService reporting() { return reporting; }
+    public TransferService transfer() { return transfer; }
+    public CsvImporter importer() { return importer; }
+    public AnalyticsService analytics() { return analytics; }
+    public RecurringScheduler recurring() { return recurring; }
+
+    // финальный сброс журналов; повторный вызов безопасен
+    @Override
+    public void close() {
+        recurring.close();
+        // фоновая выгрузка пишет снимки через журнал — до его закрытия
+        walletCache.close();
+        persistence.close();
+        journal.close();
+        if (metricsDump != null) metricsDump.close();
+    }
+}
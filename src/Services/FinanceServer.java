@@ -0,0 +1,138 @@
+package Services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Сетевой режим: построчный TCP-протокол с теми же командами, что и в консоли (подходит nc/telnet).
+// Каждое соединение — отдельная сессия CommandLoop со своим входом поверх общего FinanceCore.
+// Сессии работают на виртуальных потоках, если JVM их поддерживает (Java 21+), иначе на пуле обычных.
+public class FinanceServer implements AutoCloseable {
+    private final FinanceCore core;
+    private final String host;
+    private final int port;
+    private final int idleTimeoutMs;
+    private final Semaphore sessions;
+    private final ExecutorService executor;
+    private boolean virtual;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private volatile ServerSocket server;
+    private static final LongAdder REJECTED = Metrics.counter("errors.server.rejected");
+
+    public FinanceServer(FinanceCore core, String host, int port, int maxSessions, int idleTimeoutMs) {
+        if (maxSessions < 1) throw new IllegalArgumentException("Некорректное число сессий");
+        this.core = core;
+        this.host = host;
+        this.port = port;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.sessions = new Semaphore(maxSessions);
+        this.executor = sessionExecutor();
+        Metrics.gauge("server.sessions.active", this::activeSessions);
+        Metrics.gauge("server.sessions.accepted", this::acceptedSessions);
+    }
+
+    // адрес, порт, лимит сессий и таймаут простоя из -Dserver.host / -Dserver.port / -Dserver.maxSessions /
+    // -Dserver.idleSeconds; host != null (опция --host) важнее свойства. По умолчанию сервер слушает только
+    // локальный адрес: пароли и команды идут открытым текстом
+    public static FinanceServer fromSystemProperties(FinanceCore core, String host) {
+        return new FinanceServer(core, host != null ? host : System.getProperty("server.host", "127.0.0.1"),
+                Integer.getInteger("server.port", 7070),
+                Integer.getInteger("server.maxSessions", 10_000), Integer.getInteger("server.idleSeconds", 1800) * 1000);
+    }
+
+    public void run() throws IOException {
+        try (ServerSocket ss = new ServerSocket()) {
+            ss.setReuseAddress(true);
+            ss.bind(new InetSocketAddress(host, port), 1024);
+            server = ss;
+            System.out.println("Сервер слушает " + host + ":" + ss.getLocalPort() + ", сессии на " + (virtual ? "виртуальных" : "обычных") + " потоках");
+            while (!ss.isClosed()) {
+                Socket s;
+                try {
+                    s = ss.accept();
+                } catch (SocketException e) {
+                    if (ss.isClosed()) break;
+                    throw e;
+                }
+                // лимит сессий: лишнее соединение получает отказ, а не очередь
+                if (!sessions.tryAcquire()) {
+                    REJECTED.increment();
+                    reject(s);
+                    continue;
+                }
+                accepted.increment();
+                executor.execute(() -> serve(s));
+            }
+        }
+    }
+
+    public int port() {
+        ServerSocket ss = server;
+        return ss == null ? port : ss.getLocalPort();
+    }
+
+    public int activeSessions() { return active.get(); }
+    public long acceptedSessions() { return accepted.sum(); }
+
+    @Override
+    public void close() {
+        ServerSocket ss = server;
+        if (ss != null) {
+            try {
+                ss.close();
+            } catch (IOException ignored) {}
+        }
+        executor.shutdownNow();
+    }
+
+    private void serve(Socket s) {
+        active.incrementAndGet();
+        try (s;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), false)) {
+            s.setSoTimeout(idleTimeoutMs);
+            s.setTcpNoDelay(true);
+            new CommandLoop(core, in, out, CommandLoop.Mode.REMOTE).run();
+        } catch (IOException e) {
+            // клиент отключился — состояние сессии просто отбрасывается
+        } finally {
+            active.decrementAndGet();
+            sessions.release();
+        }
+    }
+
+    private static void reject(Socket s) {
+        try (s; PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            out.println("Ошибка: сервер перегружен, повторите позже");
+        } catch (IOException ignored) {}
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor появился в Java 21; проект собирается под 17
+    private ExecutorService sessionExecutor() {
+        try {
+            ExecutorService ex = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtual = true;
+            return ex;
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(null, r, "session-" + n.incrementAndGet(), 256 * 1024);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
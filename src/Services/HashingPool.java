@@ -0,0 +1,123 @@
+package Services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Отдельный ограниченный пул для PBKDF2: всплеск логинов не занимает потоки обработки команд.
+// Очередь ограничена; если мест нет дольше admitTimeout, запрос отклоняется, а не копится.
+public class HashingPool {
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final long admitTimeoutMs;
+    private final int queueCapacity;
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAccumulator peakQueue = new LongAccumulator(Math::max, 0);
+    // полное имя реестра: здесь Metrics — вложенная запись пула
+    private static final Histogram HASH_TIME = Services.Metrics.timer("auth.pbkdf2");
+    private static final Histogram WAIT_TIME = Services.Metrics.timer("auth.queueWait");
+    private static final LongAdder REJECTED = Services.Metrics.counter("errors.auth.rejected");
+
+    public record Metrics(long hashes, double avgHashMs, double maxHashMs, double avgWaitMs,
+                          int threads, int active, int queued, long peakQueued, int queueCapacity, long rejected) {
+        @Override
+        public String toString() {
+            return String.format("Хеширование паролей: %d шт., в среднем %.1f мс (макс. %.1f мс), ожидание в очереди %.1f мс%n"
+                            + "Потоков: %d (занято %d), очередь: %d из %d (пик %d), отклонено: %d",
+                    hashes, avgHashMs, maxHashMs, avgWaitMs, threads, active, queued, queueCapacity, peakQueued, rejected);
+        }
+    }
+
+    public HashingPool(int threads, int queueCapacity, long admitTimeoutMs) {
+        if (threads < 1 || queueCapacity < 1) throw new IllegalArgumentException("Некорректный размер пула хеширования");
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                // саму границу держит семафор; запас в очереди нужен на момент между release и взятием следующей задачи
+                new ArrayBlockingQueue<>(threads + queueCapacity), r -> {
+                    Thread t = new Thread(r, "pbkdf2-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // в работе и в очереди одновременно не больше threads + queueCapacity задач
+        this.slots = new Semaphore(threads + queueCapacity);
+        this.admitTimeoutMs = admitTimeoutMs;
+        this.queueCapacity = queueCapacity;
+    }
+
+    // размеры из -Dauth.threads / -Dauth.queue, по умолчанию по числу ядер
+    public static HashingPool fromSystemProperties() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        return new HashingPool(Integer.getInteger("auth.threads", cpus),
+                Integer.getInteger("auth.queue", 16 * cpus), Long.getLong("auth.admitTimeoutMs", 2000));
+    }
+
+    public String hash(char[] password, byte[] salt) {
+        try {
+            if (!slots.tryAcquire(admitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                REJECTED.increment();
+                throw new IllegalStateException("Слишком много одновременных входов, повторите позже");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Вход прерван", e);
+        }
+        long queuedAt = System.nanoTime();
+        Future<String> f;
+        try {
+            f = executor.submit(() -> {
+                long start = System.nanoTime();
+                waitNanos.add(start - queuedAt);
+                WAIT_TIME.record(start - queuedAt);
+                try {
+                    return PasswordHasher.hash(password, salt);
+                } finally {
+                    long took = System.nanoTime() - start;
+                    hashes.increment();
+                    hashNanos.add(took);
+                    maxHashNanos.accumulate(took);
+                    HASH_TIME.record(took);
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        peakQueue.accumulate(executor.getQueue().size());
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Вход прерван", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException("Hashing error", e.getCause());
+        }
+    }
+
+    public Metrics metrics() {
+        long n = hashes.sum();
+        return new Metrics(n,
+                n == 0 ? 0 : hashNanos.sum() / 1e6 / n,
+                maxHashNanos.get() / 1e6,
+                n == 0 ? 0 : waitNanos.sum() / 1e6 / n,
+                executor.getMaximumPoolSize(), executor.getActiveCount(),
+                executor.getQueue().size(), peakQueue.get(),
+                queueCapacity, rejected.sum());
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,80 @@
+package Services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Гистограмма неотрицательных значений с логарифмическими корзинами (по образцу HdrHistogram):
+// в каждой степени двойки 32 корзины, погрешность перцентилей не больше 1/32 (~3%).
+// Запись — одно вычисление номера корзины и атомарный инкремент, без блокировок и выделения памяти.
+public final class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB + (63 - SUB_BITS) * SUB;
+
+    public record Snapshot(long count, double mean, long p50, long p90, long p99, long max) {}
+
+    private final boolean nanos;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram(boolean nanos) {
+        this.nanos = nanos;
+    }
+
+    // значения в наносекундах: при выводе переводятся в миллисекунды
+    public boolean isTimer() { return nanos; }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    // время от start (System.nanoTime) до текущего момента
+    public void time(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    // корзины читаются без остановки записи: перцентили приблизительны, как и сами корзины
+    public Snapshot snapshot() {
+        long n = count.sum();
+        if (n == 0) return new Snapshot(0, 0, 0, 0, 0, 0);
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += c[i] = counts.get(i);
+        long top = max.get();
+        return new Snapshot(n, (double) sum.sum() / n, percentile(c, total, 0.50, top),
+                percentile(c, total, 0.90, top), percentile(c, total, 0.99, top), top);
+    }
+
+    private static long percentile(long[] c, long total, double q, long top) {
+        long rank = Math.max(1, (long) Math.ceil(total * q));
+        long seen = 0;
+        for (int i = 0; i < c.length; i++) {
+            seen += c[i];
+            if (seen >= rank) return Math.min(highest(i), top);
+        }
+        return top;
+    }
+
+    // значения меньше 32 — по корзине на значение; дальше 5 старших бит значения задают корзину внутри степени двойки
+    static int index(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) - SUB;
+        return SUB + (exp - SUB_BITS) * SUB + sub;
+    }
+
+    // наибольшее значение, попадающее в корзину i
+    static long highest(int i) {
+        if (i < SUB) return i;
+        int shift = (i - SUB) / SUB;
+        long sub = (i - SUB) % SUB;
+        return ((SUB + sub + 1) << shift) - 1;
+    }
+}
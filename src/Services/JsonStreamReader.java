@@ -0,0 +1,235 @@
+package Services;
+
+import Models.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+// Потоковый разбор JSON: читает токены из Reader через собственный буфер, не держа весь файл в памяти
+public class JsonStreamReader implements Closeable {
+    public enum Token { BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT }
+
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private int pos, limit;
+    private final StringBuilder sb = new StringBuilder();
+
+    // стек контекстов: true — объект, false — массив
+    private boolean[] stack = new boolean[16];
+    private int depth;
+    private boolean expectName;
+    private boolean first = true;
+
+    public JsonStreamReader(Reader in) {
+        this.in = in;
+    }
+
+    public Token peek() throws IOException {
+        int c = skipSeparators();
+        if (c < 0) return Token.END_DOCUMENT;
+        return switch (c) {
+            case '{' -> Token.BEGIN_OBJECT;
+            case '}' -> Token.END_OBJECT;
+            case '[' -> Token.BEGIN_ARRAY;
+            case ']' -> Token.END_ARRAY;
+            case '"' -> expectName ? Token.NAME : Token.STRING;
+            case 'n' -> Token.NULL;
+            case 't', 'f' -> Token.BOOLEAN;
+            default -> Token.NUMBER;
+        };
+    }
+
+    public void beginObject() throws IOException { expect(Token.BEGIN_OBJECT); pos++; push(true); }
+    public void endObject() throws IOException { expect(Token.END_OBJECT); pos++; pop(); }
+    public void beginArray() throws IOException { expect(Token.BEGIN_ARRAY); pos++; push(false); }
+    public void endArray() throws IOException { expect(Token.END_ARRAY); pos++; pop(); }
+
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        pos++;
+        String name = readQuoted();
+        if (skipWhitespace() != ':') throw syntax("ожидалось ':'");
+        pos++;
+        expectName = false;
+        return name;
+    }
+
+    public String nextString() throws IOException {
+        expect(Token.STRING);
+        pos++;
+        String s = readQuoted();
+        afterValue();
+        return s;
+    }
+
+    // строка или null
+    public String nextNullableString() throws IOException {
+        if (peek() == Token.NULL) { nextNull(); return null; }
+        return nextString();
+    }
+
+    public double nextDouble() throws IOException {
+        readNumber();
+        try {
+            return Double.parseDouble(sb.toString());
+        } catch (NumberFormatException e) {
+            throw syntax("некорректное число");
+        }
+    }
+
+    public long nextLong() throws IOException {
+        readNumber();
+        try {
+            return Long.parseLong(sb.toString());
+        } catch (NumberFormatException e) {
+            throw syntax("некорректное число");
+        }
+    }
+
+    // денежная сумма в копейках, без промежуточного double
+    public long nextMinor() throws IOException {
+        readNumber();
+        try {
+            return Money.parse(sb);
+        } catch (NumberFormatException e) {
+            throw syntax("некорректная сумма");
+        }
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        literal("null");
+        afterValue();
+    }
+
+    public void skipValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT -> {
+                beginObject();
+                while (hasNext()) { nextName(); skipValue(); }
+                endObject();
+            }
+            case BEGIN_ARRAY -> {
+                beginArray();
+                while (hasNext()) skipValue();
+                endArray();
+            }
+            case STRING -> nextString();
+            case NUMBER -> nextDouble();
+            case NULL -> nextNull();
+            case BOOLEAN -> { literal(buf[pos] == 't' ? "true" : "false"); afterValue(); }
+            default -> throw syntax("неожиданный токен");
+        }
+    }
+
+    @Override
+    public void close() throws IOException { in.close(); }
+
+    private void readNumber() throws IOException {
+        expect(Token.NUMBER);
+        sb.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) break;
+            char c = buf[pos];
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') { sb.append(c); pos++; }
+            else break;
+        }
+        afterValue();
+    }
+
+    private void push(boolean object) {
+        if (depth == stack.length) stack = java.util.Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = object;
+        expectName = object;
+        first = true;
+    }
+
+    private void pop() {
+        depth--;
+        afterValue();
+    }
+
+    private void afterValue() {
+        first = false;
+        expectName = depth > 0 && stack[depth - 1];
+    }
+
+    private void expect(Token t) throws IOException {
+        Token actual = peek();
+        if (actual != t) throw syntax("ожидалось " + t + ", получено " + actual);
+    }
+
+    // пропускает пробелы и запятую между элементами, возвращает следующий символ без его потребления
+    private int skipSeparators() throws IOException {
+        int c = skipWhitespace();
+        if (c == ',' && !first) {
+            pos++;
+            c = skipWhitespace();
+        }
+        return c;
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) return -1;
+            char c = buf[pos];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') pos++;
+            else return c;
+        }
+    }
+
+    private String readQuoted() throws IOException {
+        sb.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) throw syntax("незакрытая строка");
+            char c = buf[pos++];
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            if (pos == limit && !fill()) throw syntax("незакрытая строка");
+            char e = buf[pos++];
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 't' -> sb.append('\t');
+                case 'r' -> sb.append('\r');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if (pos == limit && !fill()) throw syntax("незакрытая строка");
+                        int d = Character.digit(buf[pos++], 16);
+                        if (d < 0) throw syntax("некорректная escape-последовательность");
+                        code = code * 16 + d;
+                    }
+                    sb.append((char) code);
+                }
+                default -> sb.append(e);
+            }
+        }
+    }
+
+    private void literal(String word) throws IOException {
+        for (int i = 0; i < word.length(); i++) {
+            if (pos == limit && !fill()) throw syntax("неожиданный конец файла");
+            if (buf[pos++] != word.charAt(i)) throw syntax("ожидалось " + word);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private IOException syntax(String msg) {
+        return new IOException("Ошибка формата JSON: " + msg);
+    }
+}
@@ -0,0 +1,120 @@
+package Services;
+
+import Models.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+// Потоковая запись JSON без промежуточных строк: значения пишутся сразу в буферизованный Writer
+public class JsonStreamWriter implements Closeable {
+    private final Writer out;
+    private final char[] digits = new char[24];
+
+    // стек признаков "в текущем контейнере уже есть элемент"
+    private boolean[] hasElement = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    public JsonStreamWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonStreamWriter beginObject() throws IOException { open('{'); return this; }
+    public JsonStreamWriter endObject() throws IOException { close('}'); return this; }
+    public JsonStreamWriter beginArray() throws IOException { open('['); return this; }
+    public JsonStreamWriter endArray() throws IOException { close(']'); return this; }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        separator();
+        writeQuoted(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String s) throws IOException {
+        separator();
+        if (s == null) out.write("null");
+        else writeQuoted(s);
+        return this;
+    }
+
+    // неотрицательное целое
+    public JsonStreamWriter value(long v) throws IOException {
+        separator();
+        writeLong(v);
+        return this;
+    }
+
+    // сумма в копейках как число с двумя знаками после точки: 12345 -> 123.45
+    public JsonStreamWriter valueMinor(long minor) throws IOException {
+        separator();
+        if (minor < 0) {
+            if (minor == Long.MIN_VALUE) { out.write(Money.toString(minor)); return this; }
+            out.write('-');
+            minor = -minor;
+        }
+        writeLong(minor / 100);
+        out.write('.');
+        long frac = minor % 100;
+        out.write((char) ('0' + frac / 10));
+        out.write((char) ('0' + frac % 10));
+        return this;
+    }
+
+    public void flush() throws IOException { out.flush(); }
+
+    @Override
+    public void close() throws IOException { out.close(); }
+
+    private void open(char c) throws IOException {
+        separator();
+        out.write(c);
+        if (depth == hasElement.length) hasElement = java.util.Arrays.copyOf(hasElement, depth * 2);
+        hasElement[depth++] = false;
+    }
+
+    private void close(char c) throws IOException {
+        depth--;
+        out.write(c);
+    }
+
+    private void separator() throws IOException {
+        if (afterName) { afterName = false; return; }
+        if (depth > 0) {
+            if (hasElement[depth - 1]) out.write(',');
+            hasElement[depth - 1] = true;
+        }
+    }
+
+    private void writeLong(long v) throws IOException {
+        int i = digits.length;
+        do {
+            digits[--i] = (char) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        out.write(digits, i, digits.length - i);
+    }
+
+    private void writeQuoted(String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String esc;
+            if (c == '"') esc = "\\\"";
+            else if (c == '\\') esc = "\\\\";
+            else if (c == '\n') esc = "\\n";
+            else if (c == '\r') esc = "\\r";
+            else if (c == '\t') esc = "\\t";
+            else if (c < 0x20) esc = String.format("\\u%04x", (int) c);
+            else continue;
+            out.write(s, start, i - start);
+            out.write(esc);
+            start = i + 1;
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
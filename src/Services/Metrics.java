@@ -0,0 +1,111 @@
+package Services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Общий на JVM реестр показателей: гистограммы задержек и размеров, счётчики ошибок и датчики состояния.
+// Горячие пути берут свой счётчик один раз (в статическое поле) и дальше пишут без поиска по имени.
+// Снимок выводится командой stats и, при -Dmetrics.file, периодически пишется в файл.
+public final class Metrics {
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    // гистограмма длительностей в наносекундах
+    public static Histogram timer(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram(true));
+    }
+
+    // гистограмма произвольных значений: байты, число строк
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram(false));
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    // датчик читается только при выводе; повторная регистрация заменяет прежний
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // по строке на показатель, по алфавиту: «имя значение» или «имя count=… mean=… p50=… p90=… p99=… max=…»
+    public static String dump() {
+        Map<String, String> lines = new TreeMap<>();
+        counters.forEach((k, v) -> lines.put(k, Long.toString(v.sum())));
+        gauges.forEach((k, v) -> {
+            try {
+                lines.put(k, Long.toString(v.getAsLong()));
+            } catch (RuntimeException e) {
+                lines.put(k, "?");
+            }
+        });
+        histograms.forEach((k, h) -> lines.put(k, format(h)));
+        StringBuilder sb = new StringBuilder();
+        lines.forEach((k, v) -> sb.append(k).append(' ').append(v).append('\n'));
+        return sb.toString();
+    }
+
+    private static String format(Histogram h) {
+        Histogram.Snapshot s = h.snapshot();
+        if (h.isTimer()) {
+            return String.format(Locale.ROOT, "count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                    s.count(), s.mean() / 1e6, s.p50() / 1e6, s.p90() / 1e6, s.p99() / 1e6, s.max() / 1e6);
+        }
+        return String.format(Locale.ROOT, "count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+                s.count(), s.mean(), s.p50(), s.p90(), s.p99(), s.max());
+    }
+
+    // периодическая запись снимка в файл (для внешнего сборщика); файл заменяется атомарно
+    public static FileDump dumpTo(Path file, long intervalSeconds) {
+        if (intervalSeconds < 1) throw new IllegalArgumentException("Некорректный интервал записи показателей");
+        return new FileDump(file, intervalSeconds);
+    }
+
+    public static final class FileDump implements AutoCloseable {
+        private final Path file;
+        private final ScheduledExecutorService executor;
+
+        private FileDump(Path file, long intervalSeconds) {
+            this.file = file;
+            this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.scheduleWithFixedDelay(this::write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+
+        private synchronized void write() {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.writeString(tmp, dump(), StandardCharsets.UTF_8);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Ошибка записи показателей: " + e.getMessage());
+            }
+        }
+
+        // последний снимок пишется при остановке
+        @Override
+        public void close() {
+            executor.shutdown();
+            write();
+        }
+    }
+}
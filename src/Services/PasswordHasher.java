@@ -2,6 +2,7 @@ package Services;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
@@ -9,20 +10,31 @@ public class PasswordHasher {
     private static final int ITER = 185000;
     private static final int KEY_LEN = 256;
     private static final String ALG = "PBKDF2WithHmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // SecretKeyFactory не потокобезопасен, но дорог в получении: по экземпляру на поток
+    private static final ThreadLocal<SecretKeyFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALG);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Hashing error", e);
+        }
+    });
 
     public static byte[] newSalt() {
         byte[] s = new byte[16];
-        new SecureRandom().nextBytes(s);
+        RANDOM.nextBytes(s);
         return s;
     }
 
     public static String hash(char[] password, byte[] salt) {
+        var spec = new PBEKeySpec(password, salt, ITER, KEY_LEN);
         try {
-            var spec = new PBEKeySpec(password, salt, ITER, KEY_LEN);
-            var skf = SecretKeyFactory.getInstance(ALG);
-            return Base64.getEncoder().encodeToString(skf.generateSecret(spec).getEncoded());
+            return Base64.getEncoder().encodeToString(FACTORY.get().generateSecret(spec).getEncoded());
         } catch (Exception e) {
             throw new IllegalStateException("Hashing error", e);
+        } finally {
+            spec.clearPassword();
         }
     }
 }
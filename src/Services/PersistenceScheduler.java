@@ -0,0 +1,145 @@
+package Services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Отложенная запись: изменения кошельков помечают их «грязными», а фоновый поток раз в окно
+// устойчивости сбрасывает журналы всех грязных кошельков одной группой — сначала все write,
+// затем все fsync — и сворачивает разросшиеся журналы в снимки. Команды не ждут диск;
+// при сбое теряется не больше одного окна.
+public class PersistenceScheduler {
+    private final WalletJournal journal;
+    private final long windowMs;
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService executor;
+    private Consumer<String> compact;
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private static final Histogram GROUP_TIME = Metrics.timer("persistence.group");
+    private static final Histogram GROUP_SIZE = Metrics.histogram("persistence.group.wallets");
+    private static final LongAdder JOURNAL_ERRORS = Metrics.counter("errors.journal.write");
+
+    public PersistenceScheduler(WalletJournal journal, long windowMs) {
+        if (windowMs < 1) throw new IllegalArgumentException("Некорректное окно записи");
+        this.journal = journal;
+        this.windowMs = windowMs;
+    }
+
+    public void markDirty(String login) {
+        dirty.add(login);
+    }
+
+    public synchronized void start(Consumer<String> compact) {
+        if (executor != null) return;
+        this.compact = compact;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::scheduledFlush, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    // исключение, вылетевшее из периодической задачи, навсегда отменяет её без записи в лог —
+    // отложенная запись молча остановилась бы, поэтому здесь ловится всё
+    private void scheduledFlush() {
+        try {
+            flushGroup();
+        } catch (Throwable e) {
+            JOURNAL_ERRORS.increment();
+            System.err.println("Ошибка отложенной записи: " + e);
+        }
+    }
+
+    // остановка с финальным сбросом всего накопленного (выход из программы)
+    public void close() {
+        ScheduledExecutorService ex;
+        synchronized (this) {
+            ex = executor;
+            executor = null;
+        }
+        if (ex != null) {
+            ex.shutdown();
+            try {
+                ex.awaitTermination(windowMs + 5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flushGroup();
+    }
+
+    public long windowMs() { return windowMs; }
+    public int pending() { return dirty.size(); }
+    public long groups() { return groups.sum(); }
+    public long flushedWallets() { return flushed.sum(); }
+    public double avgGroupMs() {
+        long n = groups.sum();
+        return n == 0 ? 0 : flushNanos.sum() / 1e6 / n;
+    }
+
+    // группы не пересекаются: фоновый сброс и финальный из close идут по очереди
+    private synchronized void flushGroup() {
+        if (dirty.isEmpty()) return;
+        long start = System.nanoTime();
+        List<String> batch = new ArrayList<>(dirty.size());
+        for (String login : dirty) {
+            dirty.remove(login);
+            batch.add(login);
+        }
+        List<String> written = new ArrayList<>(batch.size());
+        try {
+            for (String login : batch) {
+                try {
+                    journal.flush(login);
+                    written.add(login);
+                } catch (IOException | RuntimeException e) {
+                    // остаётся грязным до следующего окна
+                    failed(login, "Ошибка записи журнала ", e);
+                }
+            }
+            for (String login : written) {
+                try {
+                    journal.force(login);
+                } catch (IOException | RuntimeException e) {
+                    failed(login, "Ошибка сброса журнала ", e);
+                }
+            }
+            if (compact != null) {
+                for (String login : written) {
+                    try {
+                        if (journal.needsCompaction(login)) compact.accept(login);
+                    } catch (RuntimeException e) {
+                        // свёртка повторится в следующем окне, журнал уже на диске
+                        failed(login, "Ошибка свёртки журнала ", e);
+                    }
+                }
+            }
+        } catch (Error e) {
+            // например, нехватка памяти при копировании огромного кошелька: вся группа ждёт следующего окна
+            dirty.addAll(batch);
+            throw e;
+        }
+        groups.increment();
+        flushed.add(written.size());
+        flushNanos.add(System.nanoTime() - start);
+        GROUP_TIME.time(start);
+        GROUP_SIZE.record(written.size());
+    }
+
+    private void failed(String login, String what, Exception e) {
+        dirty.add(login);
+        JOURNAL_ERRORS.increment();
+        System.err.println(what + login + ": " + e.getMessage());
+    }
+}
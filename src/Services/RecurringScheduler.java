@@ -0,0 +1,272 @@
+package Services;
+
+import Enums.Frequency;
+import Enums.TxnType;
+import Interfaces.IRecurringRuleRepository;
+import Models.RecurringRule;
+import Models.Transaction;
+import Models.TransactionStore;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Повторяющиеся операции: правила лежат в очереди с приоритетом по сроку ближайшего повторения,
+// один фоновый поток спит до срока головы очереди (или до нового, более раннего правила) и не обходит правила.
+// Все наступившие повторения одного прохода группируются по кошельку и проводятся одной пачкой
+// (WalletService.addTransactions); пропущенные за время простоя повторения догоняются так же при старте.
+// Id операции выводится из номера правила и повторения: если сбой случился после проведения, но до записи
+// продвижения правила, при первом проходе после старта уже проведённые повторения узнаются и не дублируются.
+public class RecurringScheduler implements AutoCloseable {
+    // за один проход на правило не больше стольких повторений; остальные — следующими проходами
+    private static final int MAX_BATCH = 1000;
+    // часы могут перевести: спящий поток перепроверяет время хотя бы раз в минуту
+    private static final long MAX_SLEEP_SECONDS = 60;
+    private static final long RETRY_SECONDS = 60;
+
+    private static final LongAdder POSTED = Metrics.counter("recurring.posted");
+    private static final LongAdder ERRORS = Metrics.counter("errors.recurring");
+    private static final Histogram PASS_TIME = Metrics.timer("recurring.pass");
+
+    private final WalletService wallets;
+    private final IRecurringRuleRepository repository;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // ниже — под lock
+    private final PriorityQueue<RecurringRule> queue = new PriorityQueue<>(Comparator.comparingLong(RecurringRule::due));
+    private final Map<Integer, RecurringRule> active = new HashMap<>();
+    // правила, загруженные с диска и ещё не проходившие проверку на уже проведённые повторения
+    private final Set<Integer> unverified = new HashSet<>();
+    private Thread thread;
+    private boolean running;
+
+    public RecurringScheduler(WalletService wallets, IRecurringRuleRepository repository) {
+        this.wallets = wallets;
+        this.repository = repository;
+        for (RecurringRule r : repository.loadAll()) {
+            active.put(r.getId(), r);
+            unverified.add(r.getId());
+            queue.add(r);
+        }
+        Metrics.gauge("recurring.rules", this::size);
+    }
+
+    public void start() {
+        lock.lock();
+        try {
+            if (thread != null) return;
+            running = true;
+            thread = new Thread(this::loop, "recurring");
+            thread.setDaemon(true);
+            thread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // проход, начатый до остановки, доводится до конца: его операции попадают в журнал до финального сброса
+    @Override
+    public void close() {
+        Thread t;
+        lock.lock();
+        try {
+            running = false;
+            t = thread;
+            thread = null;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (t == null) return;
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public RecurringRule add(String login, TxnType type, String category, long amount, String note,
+                             Frequency frequency, LocalDateTime start) {
+        if (amount <= 0) throw new IllegalArgumentException("Некорректная сумма");
+        if (category == null || category.isBlank()) throw new IllegalArgumentException("Пустая категория");
+        RecurringRule r = new RecurringRule(repository.nextId(), login, type, category, amount, note, frequency, start, 0);
+        repository.save(r);
+        lock.lock();
+        try {
+            active.put(r.getId(), r);
+            queue.add(r);
+            // новое правило может оказаться раньше того, до которого спит поток
+            if (queue.peek() == r) changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return r;
+    }
+
+    // удалить можно только своё правило
+    public boolean delete(String login, int id) {
+        lock.lock();
+        try {
+            RecurringRule r = active.get(id);
+            if (r == null || !r.getLogin().equals(login)) return false;
+            repository.delete(id);
+            active.remove(id);
+            queue.remove(r);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<RecurringRule> rules(String login) {
+        List<RecurringRule> res = new ArrayList<>();
+        lock.lock();
+        try {
+            for (RecurringRule r : active.values()) if (r.getLogin().equals(login)) res.add(r);
+        } finally {
+            lock.unlock();
+        }
+        res.sort(Comparator.comparingInt(RecurringRule::getId));
+        return res;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return active.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void loop() {
+        lock.lock();
+        try {
+            while (running) {
+                RecurringRule head = queue.peek();
+                long now = RecurringRule.epochSecond(LocalDateTime.now());
+                if (head == null || head.due() > now) {
+                    long wait = head == null ? MAX_SLEEP_SECONDS : Math.min(head.due() - now, MAX_SLEEP_SECONDS);
+                    try {
+                        changed.await(wait, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+                List<RecurringRule> due = new ArrayList<>();
+                while (!queue.isEmpty() && queue.peek().due() <= now) due.add(queue.poll());
+                Set<Integer> verify = new HashSet<>();
+                for (RecurringRule r : due) if (unverified.remove(r.getId())) verify.add(r.getId());
+                lock.unlock();
+                try {
+                    pass(due, verify, now);
+                } finally {
+                    lock.lock();
+                }
+                // удалённые во время прохода правила в очередь не возвращаются
+                for (RecurringRule r : due) if (active.get(r.getId()) == r) queue.add(r);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void pass(List<RecurringRule> due, Set<Integer> verify, long now) {
+        long started = System.nanoTime();
+        Map<String, List<RecurringRule>> byLogin = new HashMap<>();
+        for (RecurringRule r : due) byLogin.computeIfAbsent(r.getLogin(), k -> new ArrayList<>()).add(r);
+        List<RecurringRule> progressed = new ArrayList<>();
+        for (var e : byLogin.entrySet()) {
+            try {
+                progressed.addAll(post(e.getKey(), e.getValue(), verify, now));
+            } catch (RuntimeException ex) {
+                ERRORS.increment();
+                System.err.println("Ошибка проведения повторяющихся операций " + e.getKey() + ": " + ex.getMessage());
+                for (RecurringRule r : e.getValue()) {
+                    r.retryAt(now + RETRY_SECONDS);
+                    if (verify.contains(r.getId())) restoreUnverified(r);
+                }
+            }
+        }
+        if (!progressed.isEmpty()) {
+            try {
+                repository.saveProgress(progressed);
+            } catch (RuntimeException ex) {
+                // операции уже в журнале; при перезапуске их повторения узнаются по id
+                ERRORS.increment();
+                System.err.println(ex.getMessage());
+            }
+        }
+        PASS_TIME.time(started);
+    }
+
+    // все наступившие повторения правил одного кошелька — одной пачкой
+    private List<RecurringRule> post(String login, List<RecurringRule> rules, Set<Integer> verify, long now) {
+        List<Transaction> txns = new ArrayList<>();
+        int[] counts = new int[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            RecurringRule r = rules.get(i);
+            int k = r.getPosted();
+            while (counts[i] < MAX_BATCH && RecurringRule.epochSecond(r.getFrequency().occurrence(r.getStart(), k)) <= now) {
+                txns.add(r.occurrence(k++));
+                counts[i]++;
+            }
+        }
+        List<Transaction> fresh = txns;
+        if (rules.stream().anyMatch(r -> verify.contains(r.getId()))) fresh = notYetPosted(login, txns);
+        wallets.addTransactions(login, fresh);
+        POSTED.add(fresh.size());
+        List<RecurringRule> progressed = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            RecurringRule r = rules.get(i);
+            if (counts[i] > 0) {
+                r.advance(counts[i]);
+                progressed.add(r);
+            } else {
+                // срок был сдвинут после ошибки, а повторение ещё не наступило
+                r.advance(0);
+            }
+        }
+        return progressed;
+    }
+
+    // один проход по колонкам id кошелька: какие из повторений уже проведены до сбоя.
+    // Старшие половины id ищутся двоичным поиском в массиве, объект UUID создаётся только при совпадении
+    private List<Transaction> notYetPosted(String login, List<Transaction> txns) {
+        Set<UUID> pending = new HashSet<>();
+        long[] his = new long[txns.size()];
+        for (int i = 0; i < his.length; i++) {
+            Transaction t = txns.get(i);
+            his[i] = t.idHi();
+            pending.add(new UUID(t.idHi(), t.idLo()));
+        }
+        Arrays.sort(his);
+        Set<UUID> present = wallets.read(login, w -> {
+            TransactionStore store = w.store();
+            Set<UUID> found = new HashSet<>();
+            for (int row = 0; row < store.size(); row++) {
+                if (Arrays.binarySearch(his, store.idHi(row)) < 0 || !store.hasUuid(row)) continue;
+                UUID id = new UUID(store.idHi(row), store.idLo(row));
+                if (pending.contains(id)) found.add(id);
+            }
+            return found;
+        });
+        if (present.isEmpty()) return txns;
+        List<Transaction> res = new ArrayList<>();
+        for (Transaction t : txns) if (!present.contains(new UUID(t.idHi(), t.idLo()))) res.add(t);
+        return res;
+    }
+
+    private void restoreUnverified(RecurringRule r) {
+        lock.lock();
+        try {
+            unverified.add(r.getId());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,26 +1,116 @@
 package Services;
 
 import Enums.TxnType;
+import Models.Money;
+import Models.MonthlyRollup;
 import Models.Wallet;
 
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 public class ReportingService {
+    // отчёт по месяцам — не длиннее ста лет
+    private static final int MAX_MONTHS = 1200;
+
     public String summary(Wallet w) {
-        double income = w.getTransactions().stream().filter(t->t.getType()== TxnType.INCOME).mapToDouble(t->t.getAmount()).sum();
-        double expense = w.getTransactions().stream().filter(t->t.getType()==TxnType.EXPENSE).mapToDouble(t->t.getAmount()).sum();
-        return "Общий доход: " + String.format("%,.1f", income) + "\n" +
-                "Общие расходы: " + String.format("%,.1f", expense) + "\n" +
-                "Баланс: " + String.format("%,.1f", income - expense);
+        return summary(w.totalIncome(), w.totalExpense());
+    }
+
+    public String summary(long income, long expense) {
+        return "Общий доход: " + Money.format(income) + "\n" +
+                "Общие расходы: " + Money.format(expense) + "\n" +
+                "Баланс: " + Money.format(income - expense);
     }
 
-    public String byCategory(Map<String, Double> map, String title) {
+    public String byCategory(Map<String, Long> map, String title) {
         String body = map.entrySet().stream()
                 .sorted(Map.Entry.comparingByKey(Comparator.naturalOrder()))
-                .map(e -> e.getKey() + ": " + String.format("%,.1f", e.getValue()))
+                .map(e -> e.getKey() + ": " + Money.format(e.getValue()))
                 .collect(Collectors.joining("\n"));
         return title + ":\n" + body;
     }
+
+    // отчёты по месяцам читают только помесячные итоги (WalletService.rollup), а не операции;
+    // category == null — по всем категориям
+
+    // сумма за каждый месяц [from, to], включая месяцы без операций
+    public String monthlyTrend(MonthlyRollup r, TxnType type, String category, YearMonth from, YearMonth to) {
+        validateMonths(from, to);
+        StringBuilder sb = new StringBuilder(title(type, category)).append(" по месяцам:\n");
+        long sum = 0;
+        int months = 0;
+        for (YearMonth m = from; !m.isAfter(to); m = m.plusMonths(1)) {
+            long v = r.amount(m, type, category);
+            sum += v;
+            months++;
+            sb.append(m).append(": ").append(Money.format(v)).append('\n');
+        }
+        return sb.append("В среднем за месяц: ").append(Money.format(average(sum, months))).toString();
+    }
+
+    // месяцы с января по through против тех же месяцев предыдущего года, по категориям и итогом
+    public String yearOverYear(MonthlyRollup r, TxnType type, YearMonth through) {
+        YearMonth start = through.withMonth(1);
+        YearMonth prevStart = start.minusYears(1), prevEnd = through.minusYears(1);
+        TreeSet<String> categories = new TreeSet<>();
+        for (YearMonth m = prevStart; !m.isAfter(through); m = m.plusMonths(1)) categories.addAll(r.byCategory(m, type).keySet());
+        StringBuilder sb = new StringBuilder(title(type, null)).append(", ").append(start).append("..").append(through)
+                .append(" против ").append(prevStart).append("..").append(prevEnd).append(":\n");
+        for (String c : categories) {
+            sb.append(c).append(": ").append(comparison(sum(r, type, c, prevStart, prevEnd), sum(r, type, c, start, through))).append('\n');
+        }
+        return sb.append("Итого: ").append(comparison(sum(r, type, null, prevStart, prevEnd), sum(r, type, null, start, through))).toString();
+    }
+
+    // для каждого месяца [from, to] — его сумма и среднее за window месяцев, которыми он заканчивается
+    public String rollingAverage(MonthlyRollup r, TxnType type, String category, int window, YearMonth from, YearMonth to) {
+        validateMonths(from, to);
+        if (window < 1 || window > MAX_MONTHS) throw new IllegalArgumentException("Некорректное окно усреднения: " + window);
+        StringBuilder sb = new StringBuilder(title(type, category)).append(", скользящее среднее за ")
+                .append(window).append(" мес.:\n");
+        // сумма окна сдвигается на месяц: прибавить новый месяц, вычесть выпавший
+        long sum = sum(r, type, category, from.minusMonths(window - 1), from.minusMonths(1));
+        for (YearMonth m = from; !m.isAfter(to); m = m.plusMonths(1)) {
+            long v = r.amount(m, type, category);
+            sum += v;
+            sb.append(m).append(": ").append(Money.format(v))
+                    .append(" (среднее: ").append(Money.format(average(sum, window))).append(")\n");
+            sum -= r.amount(m.minusMonths(window - 1), type, category);
+        }
+        sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+
+    private static long sum(MonthlyRollup r, TxnType type, String category, YearMonth from, YearMonth to) {
+        long sum = 0;
+        for (YearMonth m = from; !m.isAfter(to); m = m.plusMonths(1)) sum += r.amount(m, type, category);
+        return sum;
+    }
+
+    // с округлением до копейки
+    private static long average(long sum, int months) {
+        return months == 0 ? 0 : Math.floorDiv(sum + months / 2, months);
+    }
+
+    private static String comparison(long previous, long current) {
+        String change;
+        if (previous == 0) change = current == 0 ? "без изменений" : "новая";
+        else change = String.format(Locale.ROOT, "%+.1f%%", (current - previous) * 100.0 / previous);
+        return Money.format(previous) + " -> " + Money.format(current) + " (" + change + ")";
+    }
+
+    private static String title(TxnType type, String category) {
+        String t = type == TxnType.INCOME ? "Доходы" : "Расходы";
+        return category == null ? t : t + " (" + category + ")";
+    }
+
+    private static void validateMonths(YearMonth from, YearMonth to) {
+        if (from == null || to == null || from.isAfter(to)) throw new IllegalArgumentException("Некорректный период");
+        if (from.until(to, ChronoUnit.MONTHS) >= MAX_MONTHS) throw new IllegalArgumentException("Период длиннее " + MAX_MONTHS + " месяцев");
+    }
 }
@@ -0,0 +1,100 @@
+package Services;
+
+import Enums.TxnType;
+import Models.MonthlyRollup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.YearMonth;
+import java.util.Objects;
+import java.util.Optional;
+
+// Файл помесячных итогов рядом со снимком кошелька (data/<login>.rollup). Пишется после каждого снимка
+// и помечен его размером, временем изменения и номером файла: итоги действительны, только пока снимок тот же
+// (снимок заменяется переименованием, поэтому новый снимок — это и новый номер файла).
+//
+// Формат: magic, имя снимка, size, mtime, ключ файла, число ячеек,
+//         ячейки [месяц: year*12 + month-1][категория][доход][расход] (копейки)
+public class RollupStorage {
+    private static final int MAGIC = 0x31524650; // "PFR1"
+
+    private final Path dir;
+
+    public RollupStorage(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path path(String login) { return FileStorage.file(dir, login, ".rollup"); }
+
+    // запись во временный файл и атомарная замена. Итоги пишут и читатели под общей блокировкой
+    // (readRollup пересчитывает недействительный файл), поэтому у каждой записи свой временный файл
+    public void save(String login, MonthlyRollup r, Path snapshot) throws IOException {
+        Stamp s = stamp(snapshot);
+        Path target = path(login);
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            write(tmp, r, s);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void write(Path tmp, MonthlyRollup r, Stamp s) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(s.name());
+            out.writeLong(s.size());
+            out.writeLong(s.modified());
+            out.writeUTF(s.key());
+            int cells = 0;
+            for (YearMonth m : r.months()) cells += r.categories(m).size();
+            out.writeInt(cells);
+            for (YearMonth m : r.months()) {
+                for (String c : r.categories(m)) {
+                    out.writeInt(m.getYear() * 12 + m.getMonthValue() - 1);
+                    out.writeUTF(c);
+                    out.writeLong(r.amount(m, TxnType.INCOME, c));
+                    out.writeLong(r.amount(m, TxnType.EXPENSE, c));
+                }
+            }
+        }
+    }
+
+    // пусто — файла нет, он повреждён или записан для другого снимка
+    public Optional<MonthlyRollup> load(String login, Path snapshot) throws IOException {
+        Path p = path(login);
+        if (!Files.exists(p) || !Files.exists(snapshot)) return Optional.empty();
+        Stamp current = stamp(snapshot);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+            if (in.readInt() != MAGIC) return Optional.empty();
+            Stamp written = new Stamp(in.readUTF(), in.readLong(), in.readLong(), in.readUTF());
+            if (!written.equals(current)) return Optional.empty();
+            MonthlyRollup r = new MonthlyRollup();
+            int cells = in.readInt();
+            for (int i = 0; i < cells; i++) {
+                int m = in.readInt();
+                YearMonth month = YearMonth.of(Math.floorDiv(m, 12), Math.floorMod(m, 12) + 1);
+                String category = in.readUTF();
+                r.add(month, TxnType.INCOME, category, in.readLong());
+                r.add(month, TxnType.EXPENSE, category, in.readLong());
+            }
+            return Optional.of(r);
+        }
+    }
+
+    private record Stamp(String name, long size, long modified, String key) {}
+
+    private static Stamp stamp(Path snapshot) throws IOException {
+        BasicFileAttributes a = Files.readAttributes(snapshot, BasicFileAttributes.class);
+        return new Stamp(snapshot.getFileName().toString(), a.size(), a.lastModifiedTime().toMillis(),
+                Objects.toString(a.fileKey(), ""));
+    }
+}
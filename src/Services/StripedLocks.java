@@ -0,0 +1,25 @@
+package Services;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Фиксированный набор RW-блокировок, выбираемых по хэшу логина: кошельки разных пользователей
+// почти всегда попадают в разные полосы и не мешают друг другу, а память не растёт с числом кошельков.
+public class StripedLocks {
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+
+    public StripedLocks(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantReadWriteLock[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new ReentrantReadWriteLock();
+        this.mask = n - 1;
+    }
+
+    public int index(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public ReentrantReadWriteLock get(String key) { return stripes[index(key)]; }
+    public ReentrantReadWriteLock byIndex(int index) { return stripes[index]; }
+}
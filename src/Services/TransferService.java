@@ -1,6 +1,9 @@
 package Services;
 
+import Models.BudgetEvent;
+
 import java.time.LocalDateTime;
+import java.util.List;
 
 public class TransferService {
     private final WalletService walletService;
@@ -9,10 +12,10 @@ public class TransferService {
         this.walletService = walletService;
     }
 
-    public void transfer(String fromLogin, String toLogin, double amount, String note) {
+    public List<BudgetEvent> transfer(String fromLogin, String toLogin, long amount, String note) {
         if (fromLogin.equals(toLogin)) throw new IllegalArgumentException("Нельзя перевести самому себе");
         if (amount <= 0) throw new IllegalArgumentException("Сумма перевода должна быть > 0");
-        walletService.addExpense(fromLogin, "Переводы", amount, note + " -> " + toLogin, LocalDateTime.now());
-        walletService.addIncome(toLogin, "Переводы", amount, note + " <- " + fromLogin, LocalDateTime.now());
+        return walletService.transfer(fromLogin, toLogin, amount, "Переводы",
+                note + " -> " + toLogin, note + " <- " + fromLogin, LocalDateTime.now());
     }
 }
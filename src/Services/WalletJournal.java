@@ -0,0 +1,622 @@
+package Services;
+
+import Enums.TxnType;
+import Models.FrozenWallet;
+import Models.HistoryCollector;
+import Models.HistoryCursor;
+import Models.HistoryFilter;
+import Models.HistoryPage;
+import Models.JournalMark;
+import Models.Money;
+import Models.MonthlyRollup;
+import Models.Transaction;
+import Models.Wallet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Журнал изменений кошелька (data/<login>.journal): каждая операция дописывается одной строкой,
+// записи копятся в буфере и сбрасываются на диск группами (см. PersistenceScheduler),
+// там же журнал сворачивается в снимок data/<login>.json и усекается.
+// Восстановление = загрузка снимка + проигрывание журнала.
+// Первая строка файла — «G <поколение>». Снимок помнит поколение и смещение, докуда журнал в нём учтён
+// (JournalMark), поэтому сбой между записью снимка и усечением журнала не проигрывает записи дважды.
+public class WalletJournal implements Closeable {
+    private static final int COMPACT_THRESHOLD = 1000;
+    private static final String NULL = "\\N";
+    private static final Histogram WALLET_ROWS = Metrics.histogram("wallet.rows");
+    private static final LongAdder REPLAY_ERRORS = Metrics.counter("errors.journal.replay");
+
+    private final FileStorage storage;
+    private final Map<String, JournalFile> files = new ConcurrentHashMap<>();
+
+    private static final class JournalFile {
+        final Path path;
+        long generation;
+        // force идёт вне монитора файла и должен видеть канал после переписывания журнала
+        volatile FileChannel ch;
+        Writer out;
+        int records;
+        // одна свёртка кошелька за раз: снимок пишется вне блокировки полосы
+        final ReentrantLock compaction = new ReentrantLock();
+        // операций в последнем снимке: журнал сворачивается, когда дорос до доли от него
+        int snapshotRows;
+
+        JournalFile(Path p, long generation) throws IOException {
+            this.path = p;
+            this.generation = generation;
+            open();
+            if (ch.size() == 0) out.write(header(generation));
+        }
+
+        private void open() throws IOException {
+            ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            out = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8));
+        }
+
+        // переписать файл поколением next: остаются байты начиная с from — записи, которых нет в снимке.
+        // Новый файл заменяет старый переименованием, так что сбой посередине оставляет один из двух целым
+        void restart(long next, long from) throws IOException {
+            out.flush();
+            Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try (FileChannel src = FileChannel.open(path, StandardOpenOption.READ);
+                 FileChannel dst = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                dst.write(ByteBuffer.wrap(header(next).getBytes(StandardCharsets.UTF_8)));
+                long size = src.size();
+                for (long pos = from; pos < size; ) pos += src.transferTo(pos, size - pos, dst);
+                dst.force(false);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            out.close();
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                generation = next;
+            } finally {
+                open();
+            }
+        }
+    }
+
+    private record Header(long generation, int length) {}
+
+    public WalletJournal(FileStorage storage) {
+        this.storage = storage;
+    }
+
+    public void appendTransaction(String login, Transaction t) throws IOException {
+        JournalFile jf = file(login);
+        synchronized (jf) {
+            writeTransaction(jf.out, t);
+            jf.records++;
+        }
+    }
+
+    public void appendTransactions(String login, List<Transaction> txns) throws IOException {
+        JournalFile jf = file(login);
+        synchronized (jf) {
+            for (Transaction t : txns) writeTransaction(jf.out, t);
+            jf.records += txns.size();
+        }
+    }
+
+    private static void writeTransaction(Writer out, Transaction t) throws IOException {
+        out.write("T\t");
+        field(out, t.getId());
+        out.write('\t');
+        out.write(t.getType().name());
+        out.write('\t');
+        field(out, t.getCategory());
+        out.write('\t');
+        out.write(Money.toString(t.getAmount()));
+        out.write('\t');
+        field(out, t.getNote());
+        out.write('\t');
+        out.write(t.getAt().toString());
+        out.write('\n');
+    }
+
+    public void appendBudget(String login, String category, long limit) throws IOException {
+        JournalFile jf = file(login);
+        synchronized (jf) {
+            Writer out = jf.out;
+            out.write("B\t");
+            field(out, category);
+            out.write('\t');
+            out.write(Money.toString(limit));
+            out.write('\n');
+            jf.records++;
+        }
+    }
+
+    // компенсирующая запись: отменить ранее записанную транзакцию
+    public void appendRemoval(String login, String transactionId) throws IOException {
+        JournalFile jf = file(login);
+        synchronized (jf) {
+            Writer out = jf.out;
+            out.write("X\t");
+            field(out, transactionId);
+            out.write('\n');
+            jf.records++;
+        }
+    }
+
+    // сбросить журнал на диск: стоимость зависит только от числа новых записей
+    public void sync(String login) throws IOException {
+        flush(login);
+        force(login);
+    }
+
+    // буфер записей -> файл (без fsync)
+    public void flush(String login) throws IOException {
+        JournalFile jf = files.get(login);
+        if (jf == null) return;
+        synchronized (jf) {
+            jf.out.flush();
+        }
+    }
+
+    // fsync вне монитора файла, чтобы дописывание в журнал не ждало диск
+    public void force(String login) throws IOException {
+        JournalFile jf = files.get(login);
+        if (jf == null) return;
+        try {
+            jf.ch.force(false);
+        } catch (ClosedChannelException e) {
+            // файл закрыт при выгрузке кошелька; его записи уже в снимке
+        }
+    }
+
+    public boolean needsCompaction(String login) {
+        JournalFile jf = files.get(login);
+        // порог растёт с размером кошелька, иначе большой кошелёк переписывался бы целиком каждое окно
+        return jf != null && jf.records >= Math.max(COMPACT_THRESHOLD, jf.snapshotRows / 2);
+    }
+
+    public Optional<Wallet> recover(String login) {
+        Optional<Wallet> w = restore(login);
+        // распределение размеров кошельков, поднимаемых в память
+        w.ifPresent(x -> WALLET_ROWS.record(x.size()));
+        return w;
+    }
+
+    private Optional<Wallet> restore(String login) {
+        Optional<FileStorage.Snapshot> s = storage.loadSnapshot(login);
+        Optional<Wallet> snapshot = s.map(FileStorage.Snapshot::wallet);
+        JournalMark mark = mark(s);
+        Replay r;
+        try {
+            r = replay(login, snapshot, mark);
+        } catch (Exception e) {
+            REPLAY_ERRORS.increment();
+            System.err.println("Ошибка чтения журнала: " + e.getMessage());
+            // снимок уже наполовину дополнен журналом: кошелёк читается из снимка заново, а журнал
+            // откладывается для разбора — дописывать в него и сворачивать поверх него нельзя
+            setAside(login);
+            snapshot = storage.loadUserWallet(login);
+            r = null;
+        }
+        try {
+            JournalFile jf = open(login, mark);
+            jf.records = r == null ? 0 : r.records;
+            jf.snapshotRows = snapshot.map(sw -> sw.size()).orElse(0);
+        } catch (IOException e) {
+            System.err.println("Ошибка открытия журнала: " + e.getMessage());
+        }
+        if (r == null) return snapshot;
+        if (r.torn) compact(r.wallet);
+        return Optional.of(r.wallet);
+    }
+
+    // не удалось отложить журнал — кошелёк не поднимается, иначе следующая свёртка потеряла бы его записи
+    private void setAside(String login) {
+        Path broken = FileStorage.file(storage.dir(), login, ".journal.broken-" + System.currentTimeMillis());
+        try {
+            Files.move(path(login), broken);
+            storage.syncDir();
+            System.err.println("Журнал отложен в " + broken.getFileName());
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка переноса журнала: " + e.getMessage(), e);
+        }
+    }
+
+    private static JournalMark mark(Optional<FileStorage.Snapshot> s) {
+        return s.map(FileStorage.Snapshot::journal).orElse(JournalMark.NONE);
+    }
+
+    // отдельная копия кошелька из снимка и журнала: журнал не открывается на запись и не чинится.
+    // Вызывающий держит блокировку полосы кошелька, чтобы снимок и журнал не менялись во время чтения
+    public Optional<Wallet> read(String login) {
+        Optional<FileStorage.Snapshot> s = storage.loadSnapshot(login);
+        Optional<Wallet> snapshot = s.map(FileStorage.Snapshot::wallet);
+        try {
+            Replay r = replay(login, snapshot, mark(s));
+            return r == null ? snapshot : Optional.of(r.wallet);
+        } catch (Exception e) {
+            // как и при восстановлении: без журнала, а не с его половиной
+            System.err.println("Ошибка чтения журнала: " + e.getMessage());
+            return storage.loadUserWallet(login);
+        }
+    }
+
+    // помесячные итоги без подъёма кошелька: файл итогов снимка плюс операции из журнала.
+    // Нет действительного файла итогов — они считаются по снимку один раз и записываются для следующих чтений.
+    // Вызывающий держит блокировку полосы кошелька, как и для read
+    public MonthlyRollup readRollup(String login) {
+        MonthlyRollup r = storage.loadRollup(login).orElseGet(() -> {
+            MonthlyRollup fresh = storage.loadUserWallet(login).map(w -> w.timeIndex().rollup()).orElseGet(MonthlyRollup::new);
+            storage.saveRollup(login, fresh);
+            return fresh;
+        });
+        try {
+            if (replayRollup(login, r)) return r;
+        } catch (Exception e) {
+            REPLAY_ERRORS.increment();
+            System.err.println("Ошибка чтения журнала: " + e.getMessage());
+        }
+        return read(login).map(w -> w.timeIndex().rollup()).orElseGet(MonthlyRollup::new);
+    }
+
+    // false — в журнале отмена операции из снимка: её месяц и категорию знает только снимок
+    private boolean replayRollup(String login, MonthlyRollup r) throws IOException {
+        return forEachTailTransaction(login, storage.journalMark(login), f ->
+                r.add(YearMonth.from(LocalDateTime.parse(f[6])), TxnType.valueOf(f[2]), f[3], Money.parse(f[4]))).isEmpty();
+    }
+
+    // страница истории без подъёма кошелька: операции журнала и хвост упорядоченного снимка сводятся
+    // в одну страницу. Вызывающий держит блокировку полосы кошелька, как и для read
+    public HistoryPage readHistory(String login, HistoryFilter filter, HistoryCursor after, int limit) {
+        HistoryCollector c = new HistoryCollector(filter, after, limit);
+        Set<String> removed;
+        try {
+            removed = forEachTailTransaction(login, storage.journalMark(login), f -> c.offer(transaction(f)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка чтения журнала: " + e.getMessage(), e);
+        }
+        storage.history(login, c, removed);
+        return c.page();
+    }
+
+    // поля записей T журнала, кроме отменённых в нём же: сначала проход за id отмен, затем за операциями.
+    // Возвращает id отмен, чьих операций в журнале нет, — такие операции лежат в снимке. На деле их не бывает:
+    // откат пишется под той же блокировкой записи, что и отменяемая операция, и свёртка между ними не попадает
+    private Set<String> forEachTailTransaction(String login, JournalMark mark, Consumer<String[]> action) throws IOException {
+        Path p = path(login);
+        Set<String> removed = new HashSet<>();
+        try (BufferedReader br = tail(p, mark)) {
+            if (br == null) return removed;
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                if (!line.startsWith("X\t")) continue;
+                String[] f = split(line);
+                if (f.length == 2) removed.add(f[1]);
+            }
+        }
+        try (BufferedReader br = tail(p, mark)) {
+            String line = br == null ? null : br.readLine();
+            while (line != null) {
+                String next = br.readLine();
+                if (line.startsWith("T\t")) {
+                    try {
+                        String[] f = split(line);
+                        if (f.length != 7) throw new IllegalArgumentException("Неполная запись журнала");
+                        if (f[1] == null || !removed.remove(f[1])) action.accept(f);
+                    } catch (RuntimeException e) {
+                        // оборванная последняя запись после сбоя пропускается, как и при восстановлении
+                        if (next != null) throw e;
+                    }
+                }
+                line = next;
+            }
+        }
+        return removed;
+    }
+
+    private record Replay(Wallet wallet, int records, boolean torn) {}
+
+    // null — журнала нет или снимок учёл его целиком
+    private Replay replay(String login, Optional<Wallet> snapshot, JournalMark mark) throws IOException {
+        Wallet w = snapshot.orElseGet(() -> new Wallet(login));
+        boolean torn = false;
+        int records = 0;
+        try (BufferedReader br = tail(path(login), mark)) {
+            if (br == null) return null;
+            String line = br.readLine();
+            while (line != null) {
+                String next = br.readLine();
+                try {
+                    apply(w, line);
+                    records++;
+                } catch (RuntimeException e) {
+                    // оборванная последняя запись после сбоя пропускается, остальные ошибки — нет
+                    if (next != null) throw e;
+                    torn = true;
+                }
+                line = next;
+            }
+        }
+        return new Replay(w, records, torn);
+    }
+
+    // свёртка в два шага. checkpoint — под блокировкой полосы кошелька: копия кошелька и отметка конца журнала,
+    // без диска. complete — уже без блокировки: запись снимка с этой отметкой и обрезка журнала до неё;
+    // записи, дописанные между шагами, остаются в журнале следующего поколения
+    public static final class Checkpoint {
+        private final JournalFile file;
+        private final FrozenWallet wallet;
+        private final JournalMark mark;
+        private final int records;
+
+        private Checkpoint(JournalFile file, FrozenWallet wallet, JournalMark mark, int records) {
+            this.file = file;
+            this.wallet = wallet;
+            this.mark = mark;
+            this.records = records;
+        }
+    }
+
+    // null — журнала нет или кошелёк уже сворачивается; иначе вызывающий обязан вызвать complete
+    public Checkpoint checkpoint(Wallet w) {
+        JournalFile jf = files.get(w.getOwnerLogin());
+        if (jf == null || jf.compaction.isHeldByCurrentThread() || !jf.compaction.tryLock()) return null;
+        boolean started = false;
+        try {
+            Checkpoint c = start(jf, w);
+            started = true;
+            return c;
+        } catch (IOException e) {
+            System.err.println("Ошибка записи журнала: " + e.getMessage());
+            return null;
+        } finally {
+            if (!started) jf.compaction.unlock();
+        }
+    }
+
+    public boolean complete(Checkpoint c) {
+        try {
+            return finish(c);
+        } finally {
+            c.file.compaction.unlock();
+        }
+    }
+
+    // свёртка целиком, когда вызывающий и так держит блокировку кошелька (починка при восстановлении)
+    public boolean compact(Wallet w) {
+        Checkpoint c = checkpoint(w);
+        return c != null && complete(c);
+    }
+
+    private Checkpoint start(JournalFile jf, Wallet w) throws IOException {
+        FrozenWallet copy = w.freeze();
+        synchronized (jf) {
+            jf.out.flush();
+            return new Checkpoint(jf, copy, new JournalMark(jf.generation, jf.ch.size()), jf.records);
+        }
+    }
+
+    private boolean finish(Checkpoint c) {
+        JournalFile jf = c.file;
+        if (!storage.saveUserWallet(c.wallet, c.mark)) return false;
+        synchronized (jf) {
+            try {
+                restart(jf, c.mark.generation() + 1, c.mark.offset());
+                jf.records -= c.records;
+                jf.snapshotRows = c.wallet.size();
+                return true;
+            } catch (IOException e) {
+                // снимок уже помечен отметкой: учтённые записи при восстановлении пропустятся и так
+                System.err.println("Ошибка усечения журнала: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    private void restart(JournalFile jf, long next, long from) throws IOException {
+        jf.restart(next, from);
+        storage.syncDir();
+    }
+
+    // перед выгрузкой кошелька из памяти: снимок пишется, только если в журнале есть записи,
+    // файл журнала закрывается; вызывающий держит блокировку записи кошелька
+    public boolean release(Wallet w) {
+        JournalFile jf = files.get(w.getOwnerLogin());
+        if (jf == null) return true;
+        // начатая свёртка дописывает снимок без блокировки полосы — её нужно дождаться (до монитора файла:
+        // ей самой он нужен, чтобы обрезать журнал)
+        jf.compaction.lock();
+        try {
+            synchronized (jf) {
+                try {
+                    if (jf.records > 0 && !finish(start(jf, w))) return false;
+                } catch (IOException e) {
+                    System.err.println("Ошибка записи журнала: " + e.getMessage());
+                    return false;
+                }
+                try {
+                    jf.out.close();
+                } catch (IOException e) {
+                    System.err.println("Ошибка закрытия журнала: " + e.getMessage());
+                }
+                files.remove(w.getOwnerLogin(), jf);
+                return true;
+            }
+        } finally {
+            jf.compaction.unlock();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (var e : files.entrySet()) {
+            JournalFile jf = e.getValue();
+            synchronized (jf) {
+                try {
+                    jf.out.flush();
+                    jf.ch.force(false);
+                    jf.out.close();
+                } catch (IOException ex) {
+                    System.err.println("Ошибка закрытия журнала: " + ex.getMessage());
+                }
+            }
+        }
+        files.clear();
+    }
+
+    private JournalFile file(String login) throws IOException {
+        JournalFile jf = files.get(login);
+        return jf != null ? jf : open(login, storage.journalMark(login));
+    }
+
+    // файл журнала для дописывания. Учтённые в снимке записи (сбой между снимком и усечением журнала)
+    // отрезаются сразу: новые записи не должны лечь в часть файла, которую восстановление пропускает
+    private JournalFile open(String login, JournalMark mark) throws IOException {
+        synchronized (files) {
+            JournalFile jf = files.get(login);
+            if (jf != null) return jf;
+            Path p = path(login);
+            Header h = Files.exists(p) ? header(p) : null;
+            jf = new JournalFile(p, h == null ? mark.generation() + 1 : h.generation());
+            if (h != null && (h.generation() < mark.generation() || h.generation() == mark.generation() && mark.offset() > 0)) {
+                restart(jf, mark.generation() + 1, h.generation() == mark.generation() ? Math.max(h.length(), mark.offset()) : Long.MAX_VALUE);
+            }
+            files.put(login, jf);
+            return jf;
+        }
+    }
+
+    private Path path(String login) {
+        return FileStorage.file(storage.dir(), login, ".journal");
+    }
+
+    private static String header(long generation) {
+        return "G\t" + generation + "\n";
+    }
+
+    // у журналов, записанных до поколений, заголовка нет — это поколение 0
+    private static Header header(Path p) throws IOException {
+        byte[] b;
+        try (InputStream in = Files.newInputStream(p)) {
+            b = in.readNBytes(32);
+        }
+        if (b.length < 2 || b[0] != 'G' || b[1] != '\t') return new Header(0, 0);
+        for (int i = 2; i < b.length; i++) {
+            if (b[i] == '\n') return new Header(Long.parseLong(new String(b, 2, i - 2, StandardCharsets.US_ASCII)), i + 1);
+        }
+        throw new IOException("Повреждён заголовок журнала");
+    }
+
+    // записи журнала, которых нет в снимке; null — журнала нет или снимок учёл его целиком
+    private static BufferedReader tail(Path p, JournalMark mark) throws IOException {
+        if (!Files.exists(p)) return null;
+        Header h = header(p);
+        if (h.generation() < mark.generation()) return null;
+        long from = h.generation() == mark.generation() ? Math.max(h.length(), mark.offset()) : h.length();
+        FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+        ch.position(from);
+        return new BufferedReader(Channels.newReader(ch, StandardCharsets.UTF_8));
+    }
+
+    private static void apply(Wallet w, String line) {
+        String[] f = split(line);
+        switch (f[0]) {
+            case "T" -> {
+                if (f.length != 7) throw new IllegalArgumentException("Неполная запись журнала");
+                w.addTransaction(transaction(f));
+            }
+            case "B" -> {
+                if (f.length != 3) throw new IllegalArgumentException("Неполная запись журнала");
+                w.setBudget(f[1], Money.parse(f[2]));
+            }
+            case "X" -> {
+                if (f.length != 2) throw new IllegalArgumentException("Неполная запись журнала");
+                w.findTransaction(f[1]).ifPresent(w::removeTransaction);
+            }
+            default -> throw new IllegalArgumentException("Неизвестная запись журнала: " + f[0]);
+        }
+    }
+
+    private static Transaction transaction(String[] f) {
+        return new Transaction(f[1], TxnType.valueOf(f[2]), f[3], Money.parse(f[4]), f[5], LocalDateTime.parse(f[6]));
+    }
+
+    private static void field(Writer out, String s) throws IOException {
+        if (s == null) { out.write(NULL); return; }
+        int i = 0;
+        while (i < s.length() && !special(s.charAt(i))) i++;
+        // обычно экранировать нечего — строка пишется целиком, а не по символу
+        if (i == s.length()) { out.write(s); return; }
+        out.write(s, 0, i);
+        for (; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\' -> out.write("\\\\");
+                case '\t' -> out.write("\\t");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                default -> out.write(c);
+            }
+        }
+    }
+
+    private static boolean special(char c) {
+        return c == '\\' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static String[] split(String line) {
+        List<String> out = new ArrayList<>(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= line.length(); i++) {
+            char c = i < line.length() ? line.charAt(i) : '\t';
+            if (c == '\t') {
+                String v = sb.toString();
+                out.add(v.equals(NULL) ? null : unescape(v));
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == s.length()) { sb.append(c); continue; }
+            char e = s.charAt(++i);
+            sb.append(switch (e) {
+                case 't' -> '\t';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                default -> e;
+            });
+        }
+        return sb.toString();
+    }
+}
@@ -2,138 +2,423 @@ package Services;
 
 import Enums.TxnType;
 import Interfaces.IWalletRepository;
+import Models.BudgetEvent;
+import Models.CategoryBudget;
+import Models.HistoryCollector;
+import Models.HistoryCursor;
+import Models.HistoryFilter;
+import Models.HistoryPage;
+import Models.Money;
+import Models.MonthlyRollup;
+import Models.SearchResult;
 import Models.Transaction;
+import Models.TransactionQuery;
+import Models.TransactionStore;
 import Models.Wallet;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class WalletService {
     private final IWalletRepository wallets;
+    private final WalletJournal journal;
+    // изменения кошелька — под блокировкой записи его полосы, чтения — под блокировкой чтения
+    private final StripedLocks locks;
+    private final PersistenceScheduler persistence;
+    private final BudgetEngine budgets = new BudgetEngine();
+    // получают логин после каждого изменения кошелька (под его блокировкой записи, поэтому должны быть дешёвыми)
+    private final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
 
     public WalletService(IWalletRepository wallets) {
+        this(wallets, null);
+    }
+
+    public WalletService(IWalletRepository wallets, WalletJournal journal) {
+        this(wallets, journal, new StripedLocks(64));
+    }
+
+    // общие полосы с репозиторием, который выгружает кошельки под теми же блокировками
+    public WalletService(IWalletRepository wallets, WalletJournal journal, StripedLocks locks) {
+        this(wallets, journal, locks, null);
+    }
+
+    public WalletService(IWalletRepository wallets, WalletJournal journal, StripedLocks locks, PersistenceScheduler persistence) {
         this.wallets = wallets;
+        this.journal = journal;
+        this.locks = locks;
+        this.persistence = persistence;
     }
 
+    public StripedLocks locks() { return locks; }
+    public BudgetEngine budgets() { return budgets; }
+    public void onChange(Consumer<String> listener) { changeListeners.add(listener); }
+
+    // кошелёк, отсутствующий в репозитории, восстанавливается из снимка и журнала (или создаётся пустым)
     public Wallet ensureWallet(String login) {
-        return wallets.findByOwner(login).orElseGet(() -> {
-            Wallet w = new Wallet(login);
-            wallets.save(w);
-            return w;
-        });
+        Optional<Wallet> found = wallets.findLoaded(login);
+        if (found.isPresent()) return found.get();
+        Lock lock = locks.get(login).writeLock();
+        lock.lock();
+        try {
+            return wallets.findByOwner(login).orElseGet(() -> {
+                Wallet w = journal == null ? new Wallet(login) : journal.recover(login).orElseGet(() -> new Wallet(login));
+                wallets.save(w);
+                return w;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // чтение кошелька под блокировкой чтения его полосы
+    public <R> R read(String login, Function<Wallet, R> reader) {
+        Lock lock = locks.get(login).readLock();
+        while (true) {
+            Wallet w = ensureWallet(login);
+            lock.lock();
+            try {
+                if (resident(w)) return reader.apply(w);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // чтение без загрузки в кэш кошельков: резидентный кошелёк читается на месте, остальные — отдельной
+    // копией с диска; блокировка чтения полосы не даёт загрузить, выгрузить или свернуть кошелёк во время чтения
+    public <R> R peek(String login, Function<Wallet, R> reader) {
+        Lock lock = locks.get(login).readLock();
+        lock.lock();
+        try {
+            Optional<Wallet> loaded = wallets.findLoaded(login);
+            if (loaded.isPresent()) return reader.apply(loaded.get());
+            Wallet copy = journal == null ? new Wallet(login) : journal.read(login).orElseGet(() -> new Wallet(login));
+            return reader.apply(copy);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public void addIncome(String login, String category, double amount, String note, LocalDateTime at) {
+    // возвращают события пересечения порогов, вызванные этой операцией (они же уходят подписчикам)
+    public List<BudgetEvent> addIncome(String login, String category, long amount, String note, LocalDateTime at) {
         validateAmount(amount);
         validateCategory(category);
-        Wallet w = ensureWallet(login);
-        w.addTransaction(new Transaction(TxnType.INCOME, category, amount, note, at));
-        wallets.save(w);
+        Transaction t = new Transaction(TxnType.INCOME, category, amount, note, at);
+        return publish(write(login, w -> {
+            append(w, t);
+            return budgets.onTransaction(w, t);
+        }));
     }
 
-    public void addExpense(String login, String category, double amount, String note, LocalDateTime at) {
+    public List<BudgetEvent> addExpense(String login, String category, long amount, String note, LocalDateTime at) {
         validateAmount(amount);
         validateCategory(category);
-        Wallet w = ensureWallet(login);
-        w.addTransaction(new Transaction(TxnType.EXPENSE, category, amount, note, at));
-        wallets.save(w);
+        Transaction t = new Transaction(TxnType.EXPENSE, category, amount, note, at);
+        return publish(write(login, w -> {
+            append(w, t);
+            return budgets.onTransaction(w, t);
+        }));
     }
 
-    public void setBudget(String login, String category, double limit) {
+    // пакетное добавление: одна блокировка, одна запись журнала и одно сохранение на всю пачку
+    public List<BudgetEvent> addTransactions(String login, List<Transaction> txns) {
+        if (txns.isEmpty()) return List.of();
+        for (Transaction t : txns) validateAmount(t.getAmount());
+        return publish(write(login, w -> {
+            if (journal != null) {
+                try {
+                    journal.appendTransactions(login, txns);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Ошибка записи журнала: " + e.getMessage(), e);
+                }
+            }
+            for (Transaction t : txns) w.addTransaction(t);
+            return budgets.onBatch(w, txns);
+        }));
+    }
+
+    public List<BudgetEvent> setBudget(String login, String category, long limit) {
         validateCategory(category);
         if (limit < 0) throw new IllegalArgumentException("Лимит не может быть отрицательным");
-        Wallet w = ensureWallet(login);
-        w.setBudget(category, limit);
-        wallets.save(w);
+        return publish(write(login, w -> {
+            if (journal != null) {
+                try {
+                    journal.appendBudget(login, category, limit);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Ошибка записи журнала: " + e.getMessage(), e);
+                }
+            }
+            CategoryBudget previous = w.getBudgets().get(category);
+            w.setBudget(category, limit);
+            return budgets.onBudgetChange(w, previous, w.getBudgets().get(category));
+        }));
     }
 
-    public void editBudget(String login, String category, double limit) {
-        setBudget(login, category, limit);
+    // перевод как одна операция: обе полосы блокируются в порядке возрастания индекса (без взаимных
+    // блокировок при встречных переводах), при ошибке зачисления списание откатывается
+    public List<BudgetEvent> transfer(String fromLogin, String toLogin, long amount, String category,
+                                      String debitNote, String creditNote, LocalDateTime at) {
+        validateAmount(amount);
+        validateCategory(category);
+        Transaction debit = new Transaction(TxnType.EXPENSE, category, amount, debitNote, at);
+        Transaction credit = new Transaction(TxnType.INCOME, category, amount, creditNote, at);
+
+        int a = locks.index(fromLogin), b = locks.index(toLogin);
+        Lock first = locks.byIndex(Math.min(a, b)).writeLock();
+        Lock second = a == b ? null : locks.byIndex(Math.max(a, b)).writeLock();
+        List<BudgetEvent> events = new ArrayList<>();
+        while (true) {
+            Wallet from = ensureWallet(fromLogin);
+            Wallet to = ensureWallet(toLogin);
+            first.lock();
+            if (second != null) second.lock();
+            try {
+                if (!resident(from) || !resident(to)) continue;
+                append(from, debit);
+                try {
+                    append(to, credit);
+                } catch (RuntimeException e) {
+                    rollback(from, debit);
+                    throw e;
+                }
+                wallets.save(from);
+                wallets.save(to);
+                markDirty(fromLogin);
+                markDirty(toLogin);
+                events.addAll(budgets.onTransaction(from, debit));
+                events.addAll(budgets.onTransaction(to, credit));
+            } finally {
+                if (second != null) second.unlock();
+                first.unlock();
+            }
+            return publish(events);
+        }
     }
 
-    public double totalIncome(String login) {
-        Wallet w = ensureWallet(login);
-        return w.getTransactions().stream().filter(t -> t.getType()==TxnType.INCOME).mapToDouble(Transaction::getAmount).sum();
+    // свернуть журнал в снимок. Под блокировкой чтения полосы — только копия кошелька и отметка журнала,
+    // снимок пишется уже без неё, и записи в кошелёк не ждут диск
+    public void compact(String login) {
+        if (journal == null) return;
+        wallets.findLoaded(login).ifPresent(w -> {
+            WalletJournal.Checkpoint c;
+            Lock lock = locks.get(login).readLock();
+            lock.lock();
+            try {
+                c = journal.checkpoint(w);
+            } finally {
+                lock.unlock();
+            }
+            if (c != null) journal.complete(c);
+        });
     }
 
-    public double totalExpense(String login) {
-        Wallet w = ensureWallet(login);
-        return w.getTransactions().stream().filter(t -> t.getType()==TxnType.EXPENSE).mapToDouble(Transaction::getAmount).sum();
+    public List<BudgetEvent> editBudget(String login, String category, long limit) {
+        return setBudget(login, category, limit);
     }
 
-    public Map<String, Double> incomeByCategory(String login) {
-        Wallet w = ensureWallet(login);
-        return w.getTransactions().stream()
-                .filter(t -> t.getType()==TxnType.INCOME)
-                .collect(Collectors.groupingBy(t -> Optional.ofNullable(t.getCategory()).orElse("Без категории"),
-                        Collectors.summingDouble(Transaction::getAmount)));
+    // суммы в копейках; счётчики кошелька читаются без блокировки
+    public long totalIncome(String login) {
+        return ensureWallet(login).totalIncome();
     }
 
-    public Map<String, Double> expenseByCategory(String login) {
-        Wallet w = ensureWallet(login);
-        return w.getTransactions().stream()
-                .filter(t -> t.getType()==TxnType.EXPENSE)
-                .collect(Collectors.groupingBy(t -> Optional.ofNullable(t.getCategory()).orElse("Без категории"),
-                        Collectors.summingDouble(Transaction::getAmount)));
+    public long totalExpense(String login) {
+        return ensureWallet(login).totalExpense();
+    }
+
+    public Map<String, Long> incomeByCategory(String login) {
+        return ensureWallet(login).incomeByCategory();
+    }
+
+    public Map<String, Long> expenseByCategory(String login) {
+        return ensureWallet(login).expenseByCategory();
+    }
+
+    // суммы за период [from, to) по индексу времени, без полного прохода по транзакциям
+    public long periodIncome(String login, LocalDateTime from, LocalDateTime to) {
+        validatePeriod(from, to);
+        return read(login, w -> w.timeIndex().total(TxnType.INCOME, from, to));
+    }
+
+    public long periodExpense(String login, LocalDateTime from, LocalDateTime to) {
+        validatePeriod(from, to);
+        return read(login, w -> w.timeIndex().total(TxnType.EXPENSE, from, to));
+    }
+
+    public Map<String, Long> periodIncomeByCategory(String login, LocalDateTime from, LocalDateTime to) {
+        validatePeriod(from, to);
+        return read(login, w -> w.timeIndex().byCategory(TxnType.INCOME, from, to));
+    }
+
+    public Map<String, Long> periodExpenseByCategory(String login, LocalDateTime from, LocalDateTime to) {
+        validatePeriod(from, to);
+        return read(login, w -> w.timeIndex().byCategory(TxnType.EXPENSE, from, to));
+    }
+
+    // помесячные итоги для отчётов: у кошелька в памяти — из сумм индекса времени, иначе — из файла итогов
+    // и хвоста журнала, без подъёма кошелька в кэш и без чтения снимка
+    public MonthlyRollup rollup(String login) {
+        Lock lock = locks.get(login).readLock();
+        lock.lock();
+        try {
+            Optional<Wallet> loaded = wallets.findLoaded(login);
+            if (loaded.isPresent()) return loaded.get().timeIndex().rollup();
+            return journal == null ? new MonthlyRollup() : journal.readRollup(login);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public Map<String, Double> expenseBySelectedCategories(String login, List<String> categories) {
+    public Map<String, Long> expenseBySelectedCategories(String login, List<String> categories) {
         Wallet w = ensureWallet(login);
-        Set<String> set = new HashSet<>(categories);
-        Map<String, Double> result = new LinkedHashMap<>();
-        for (String c : categories) {
-            double sum = w.getTransactions().stream()
-                    .filter(t -> t.getType()==TxnType.EXPENSE && c.equals(t.getCategory()))
-                    .mapToDouble(Transaction::getAmount).sum();
-            if (sum == 0) {
-                System.out.println("Внимание: категория не найдена или нет расходов: " + c);
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (String c : categories) result.put(c, w.expenseOf(c));
+        return result;
+    }
+
+    // поиск по индексу кошелька; суммы считаются по всем совпадениям, операции отдаются последние limit
+    public SearchResult search(String login, TransactionQuery query, int limit) {
+        if (limit < 0) throw new IllegalArgumentException("Некорректное число операций");
+        return read(login, w -> {
+            TransactionStore store = w.store();
+            int[] rows = w.searchIndex().search(query);
+            long income = 0, expense = 0;
+            for (int row : rows) {
+                if (store.isIncome(row)) income += store.amount(row);
+                else expense += store.amount(row);
+            }
+            List<Transaction> latest = new ArrayList<>(Math.min(limit, rows.length));
+            for (int k = rows.length - 1; k >= 0 && latest.size() < limit; k--) latest.add(store.get(rows[k]));
+            return new SearchResult(rows.length, income, expense, latest);
+        });
+    }
+
+    // история операций от новых к старым, страницами по limit; after — курсор предыдущей страницы (null — первая).
+    // Кошелёк в памяти читается по индексу времени с конца, остальные — прямо из снимка и журнала,
+    // без подъёма в кэш: первая страница не ждёт загрузки всего кошелька
+    public HistoryPage history(String login, HistoryFilter filter, HistoryCursor after, int limit) {
+        HistoryCollector c = new HistoryCollector(filter, after, limit);
+        Lock lock = locks.get(login).readLock();
+        lock.lock();
+        try {
+            Optional<Wallet> loaded = wallets.findLoaded(login);
+            if (loaded.isEmpty()) return journal == null ? c.page() : journal.readHistory(login, filter, after, limit);
+            TransactionStore store = loaded.get().store();
+            for (int row : loaded.get().timeIndex().newest(after, r -> filter.matches(store.type(r), store.category(r)), limit + 1)) {
+                c.offer(store.get(row));
             }
-            result.put(c, sum);
+            return c.page();
+        } finally {
+            lock.unlock();
         }
-        return result;
     }
 
     public Map<String, String> budgetStatus(String login) {
-        Wallet w = ensureWallet(login);
-        Map<String, Double> byCat = expenseByCategory(login);
-        Map<String, String> res = new LinkedHashMap<>();
-        w.getBudgets().forEach((cat, b) -> {
-            double spent = byCat.getOrDefault(cat, 0.0);
-            double left = b.getLimit() - spent;
-            res.put(cat, String.format("Бюджет: %.2f, Остаток: %.2f", b.getLimit(), left));
+        return read(login, w -> {
+            Map<String, String> res = new LinkedHashMap<>();
+            w.getBudgets().forEach((cat, b) -> {
+                long left = b.getLimit() - w.expenseOf(cat);
+                res.put(cat, "Бюджет: " + Money.toString(b.getLimit()) + ", Остаток: " + Money.toString(left));
+            });
+            return res;
         });
-        return res;
     }
 
     public List<String> alerts(String login) {
-        Wallet w = ensureWallet(login);
+        return read(login, this::alerts);
+    }
+
+    private List<String> alerts(Wallet w) {
         List<String> alerts = new ArrayList<>();
-        double income = totalIncome(login);
-        double expense = totalExpense(login);
+        long income = w.totalIncome();
+        long expense = w.totalExpense();
         if (expense > income) {
-            alerts.add("Расходы превысили доходы! Текущий баланс: " + (income - expense));
+            alerts.add("Расходы превысили доходы! Текущий баланс: " + Money.toString(income - expense));
         }
-        Map<String, Double> byCat = expenseByCategory(login);
-        w.getBudgets().forEach((cat, budget) -> {
-            double spent = byCat.getOrDefault(cat, 0.0);
-            if (spent >= 0.8 * budget.getLimit() && spent < budget.getLimit()) {
-                alerts.add("Достигнуто 80% лимита по '" + cat + "': " + String.format("%.2f/%.2f", spent, budget.getLimit()));
-            }
-            if (spent > budget.getLimit()) {
-                alerts.add("Превышен лимит по '" + cat + "': " + String.format("%.2f/%.2f", spent, budget.getLimit()));
-            }
-        });
+        w.getBudgets().forEach((cat, budget) -> budgetAlerts(cat, budget, w.expenseOf(cat), alerts));
         if (w.balance() == 0) {
             alerts.add("Баланс нулевой.");
         }
         return alerts;
     }
 
+    private void budgetAlerts(String cat, CategoryBudget budget, long spent, List<String> alerts) {
+        long limit = budget.getLimit();
+        // 80% в целых копейках: spent * 5 >= limit * 4
+        if (spent * 5 >= limit * 4 && spent < limit) {
+            alerts.add("Достигнуто 80% лимита по '" + cat + "': " + Money.toString(spent) + "/" + Money.toString(limit));
+        }
+        if (spent > limit) {
+            alerts.add("Превышен лимит по '" + cat + "': " + Money.toString(spent) + "/" + Money.toString(limit));
+        }
+    }
+
+    private <R> R write(String login, Function<Wallet, R> change) {
+        Lock lock = locks.get(login).writeLock();
+        while (true) {
+            Wallet w = ensureWallet(login);
+            lock.lock();
+            try {
+                if (!resident(w)) continue;
+                R result = change.apply(w);
+                wallets.save(w);
+                markDirty(login);
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // подписчики оповещаются уже без блокировки кошелька
+    private List<BudgetEvent> publish(List<BudgetEvent> events) {
+        budgets.publish(events);
+        return events;
+    }
+
+    private void markDirty(String login) {
+        if (persistence != null) persistence.markDirty(login);
+        for (Consumer<String> l : changeListeners) l.accept(login);
+    }
+
+    // кошелёк могли выгрузить между ensureWallet и захватом блокировки — тогда берётся новый экземпляр
+    private boolean resident(Wallet w) {
+        return wallets.findLoaded(w.getOwnerLogin()).orElse(null) == w;
+    }
+
+    // запись в журнал идёт до изменения кошелька: при ошибке записи операция не применяется
+    private void append(Wallet w, Transaction t) {
+        if (journal != null) {
+            try {
+                journal.appendTransaction(w.getOwnerLogin(), t);
+            } catch (IOException e) {
+                throw new IllegalStateException("Ошибка записи журнала: " + e.getMessage(), e);
+            }
+        }
+        w.addTransaction(t);
+    }
+
+    private void rollback(Wallet w, Transaction t) {
+        w.removeTransaction(t);
+        if (journal == null) return;
+        try {
+            journal.appendRemoval(w.getOwnerLogin(), t.getId());
+        } catch (IOException e) {
+            System.err.println("Ошибка записи журнала при откате: " + e.getMessage());
+        }
+    }
+
     private void validateCategory(String category) {
         if (category == null || category.isBlank()) throw new IllegalArgumentException("Пустая категория");
     }
-    private void validateAmount(double amount) {
-        if (Double.isNaN(amount) || amount <= 0) throw new IllegalArgumentException("Некорректная сумма");
+    private void validatePeriod(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !from.isBefore(to)) throw new IllegalArgumentException("Некорректный период");
+    }
+    private void validateAmount(long amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Некорректная сумма");
     }
 }
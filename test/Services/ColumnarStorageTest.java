@@ -0,0 +1,112 @@
+package Services;
+
+import Enums.TxnType;
+import Models.HistoryCollector;
+import Models.HistoryFilter;
+import Models.JournalMark;
+import Models.Transaction;
+import Models.TransactionQuery;
+import Models.Wallet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarStorageTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void nonUuidIdSurvivesSaveAndLoad() throws Exception {
+        Wallet w = new Wallet("alice");
+        Transaction imported = new Transaction("bank-42", TxnType.EXPENSE, "Еда", 12_345, "кафе", LocalDateTime.of(2024, 3, 5, 12, 0));
+        Transaction generated = new Transaction(TxnType.INCOME, null, 100_00, null, LocalDateTime.of(2024, 3, 1, 9, 30));
+        w.addTransaction(imported);
+        w.addTransaction(generated);
+        w.setBudget("Еда", 500_00);
+
+        ColumnarStorage storage = new ColumnarStorage(dir);
+        storage.save(w, new JournalMark(3, 17));
+        FileStorage.Snapshot s = storage.load("alice").orElseThrow();
+
+        assertEquals(new JournalMark(3, 17), s.journal());
+        Wallet loaded = s.wallet();
+        assertEquals(2, loaded.size());
+        Transaction t = loaded.findTransaction("bank-42").orElseThrow();
+        assertEquals("bank-42", t.getId());
+        assertEquals(12_345, t.getAmount());
+        assertEquals("кафе", t.getNote());
+        assertEquals(generated.getId(), loaded.findTransaction(generated.getId()).orElseThrow().getId());
+        assertEquals(500_00, loaded.getBudgets().get("Еда").getLimit());
+    }
+
+    @Test
+    void loadRebuildsTotalsAndIndexes() throws Exception {
+        Wallet w = new Wallet("carol");
+        LocalDateTime base = LocalDateTime.of(2023, 11, 20, 8, 0);
+        for (int i = 0; i < 500; i++) {
+            TxnType type = i % 3 == 0 ? TxnType.INCOME : TxnType.EXPENSE;
+            String category = i % 7 == 0 ? null : "кат" + i % 5;
+            String note = i % 4 == 0 ? "обед в кафе " + i : null;
+            w.addTransaction(new Transaction(type, category, 100 + i, note, base.plusHours(37L * i)));
+        }
+        w.addTransaction(new Transaction("csv-1", TxnType.EXPENSE, "кат1", 999, "импорт", base.minusDays(3)));
+
+        ColumnarStorage storage = new ColumnarStorage(dir);
+        storage.save(w, JournalMark.NONE);
+        Wallet loaded = storage.load("carol").orElseThrow().wallet();
+
+        assertEquals(w.size(), loaded.size());
+        assertEquals(w.totalIncome(), loaded.totalIncome());
+        assertEquals(w.totalExpense(), loaded.totalExpense());
+        assertEquals(w.incomeByCategory(), loaded.incomeByCategory());
+        assertEquals(w.expenseByCategory(), loaded.expenseByCategory());
+        LocalDateTime from = base.plusDays(10), to = base.plusDays(400);
+        assertEquals(w.timeIndex().byCategory(TxnType.EXPENSE, from, to), loaded.timeIndex().byCategory(TxnType.EXPENSE, from, to));
+        assertEquals(w.timeIndex().count(from, to), loaded.timeIndex().count(from, to));
+        TransactionQuery cafe = new TransactionQuery("кафе", Set.of(), null, null, null, null, null);
+        assertEquals(w.searchIndex().search(cafe).length, loaded.searchIndex().search(cafe).length);
+        assertEquals("импорт", loaded.findTransaction("csv-1").orElseThrow().getNote());
+
+        // хранилище поверх загруженных колонок продолжает расти как обычно
+        loaded.addTransaction(new Transaction(TxnType.INCOME, null, 5_00, null, base));
+        assertEquals(w.size() + 1, loaded.size());
+        assertEquals(w.totalIncome() + 5_00, loaded.totalIncome());
+    }
+
+    @Test
+    void notesAfterUnpairedSurrogateReadBack() throws Exception {
+        Wallet w = new Wallet("dave");
+        LocalDateTime at = LocalDateTime.of(2024, 5, 1, 10, 0);
+        w.addTransaction(new Transaction("n1", TxnType.EXPENSE, null, 1_00, "обрыв \uD83D", at));
+        w.addTransaction(new Transaction("n2", TxnType.EXPENSE, null, 2_00, "кофе ☕ 😀", at.plusMinutes(1)));
+        w.addTransaction(new Transaction("n3", TxnType.EXPENSE, null, 3_00, "последняя", at.plusMinutes(2)));
+        ColumnarStorage storage = new ColumnarStorage(dir);
+        storage.save(w, JournalMark.NONE);
+
+        Wallet loaded = storage.load("dave").orElseThrow().wallet();
+        // одиночный суррогат UTF-8 заменяет на «?»; следующие заметки не должны съехать
+        assertEquals("обрыв ?", loaded.findTransaction("n1").orElseThrow().getNote());
+        assertEquals("кофе ☕ 😀", loaded.findTransaction("n2").orElseThrow().getNote());
+        assertEquals("последняя", loaded.findTransaction("n3").orElseThrow().getNote());
+    }
+
+    @Test
+    void historyReturnsOriginalIds() throws Exception {
+        Wallet w = new Wallet("bob");
+        w.addTransaction(new Transaction("row-1", TxnType.EXPENSE, null, 1_00, null, LocalDateTime.of(2024, 1, 1, 0, 0)));
+        w.addTransaction(new Transaction("row-2", TxnType.EXPENSE, null, 2_00, null, LocalDateTime.of(2024, 1, 2, 0, 0)));
+        ColumnarStorage storage = new ColumnarStorage(dir);
+        storage.save(w, JournalMark.NONE);
+
+        HistoryCollector c = new HistoryCollector(new HistoryFilter(null, null), null, 10);
+        storage.history("bob", c, Set.of());
+        List<String> ids = c.page().transactions().stream().map(Transaction::getId).toList();
+        assertEquals(List.of("row-2", "row-1"), ids);
+    }
+}
@@ -0,0 +1,156 @@
+package Services;
+
+import Enums.TxnType;
+import Models.Transaction;
+import Models.Wallet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletJournalTest {
+    private static final LocalDateTime AT = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoverReplaysTransactionsAndBudgets() throws Exception {
+        FileStorage storage = new FileStorage(dir, FileStorage.Format.JSON);
+        WalletJournal journal = new WalletJournal(storage);
+        Wallet w = open(journal, "alice");
+        add(journal, w, TxnType.INCOME, 1000_00);
+        add(journal, w, TxnType.EXPENSE, 250_00);
+        w.setBudget("Еда", 300_00);
+        journal.appendBudget("alice", "Еда", 300_00);
+        journal.close();
+
+        Wallet r = new WalletJournal(storage).recover("alice").orElseThrow();
+        assertEquals(2, r.size());
+        assertEquals(750_00, r.balance());
+        assertEquals(300_00, r.getBudgets().get("Еда").getLimit());
+    }
+
+    @Test
+    void tornLastRecordIsDroppedAndJournalRepaired() throws Exception {
+        FileStorage storage = new FileStorage(dir, FileStorage.Format.JSON);
+        WalletJournal journal = new WalletJournal(storage);
+        Wallet w = open(journal, "alice");
+        for (int i = 0; i < 3; i++) add(journal, w, TxnType.EXPENSE, 10_00);
+        journal.close();
+        // сбой посреди записи: от последней строки остался обрывок без перевода строки
+        Path p = dir.resolve("alice.journal");
+        byte[] b = Files.readAllBytes(p);
+        Files.write(p, Arrays.copyOf(b, b.length - 12));
+
+        WalletJournal j2 = new WalletJournal(storage);
+        Wallet r = j2.recover("alice").orElseThrow();
+        assertEquals(2, r.size());
+        assertEquals(-20_00, r.balance());
+        // восстановление свернуло журнал: новые записи не ложатся после обрывка
+        add(j2, r, TxnType.INCOME, 5_00);
+        j2.close();
+
+        Wallet again = new WalletJournal(storage).recover("alice").orElseThrow();
+        assertEquals(3, again.size());
+        assertEquals(-15_00, again.balance());
+    }
+
+    @Test
+    void garbledLastLineIsTreatedAsTorn() throws Exception {
+        FileStorage storage = new FileStorage(dir, FileStorage.Format.JSON);
+        WalletJournal journal = new WalletJournal(storage);
+        Wallet w = open(journal, "alice");
+        add(journal, w, TxnType.INCOME, 40_00);
+        journal.close();
+        Files.writeString(dir.resolve("alice.journal"), "T\tбитая\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        Wallet r = new WalletJournal(storage).recover("alice").orElseThrow();
+        assertEquals(1, r.size());
+        assertEquals(40_00, r.balance());
+    }
+
+    @Test
+    void corruptRecordInTheMiddleSetsJournalAside() throws Exception {
+        FileStorage storage = new FileStorage(dir, FileStorage.Format.JSON);
+        WalletJournal journal = new WalletJournal(storage);
+        Wallet w = open(journal, "alice");
+        add(journal, w, TxnType.INCOME, 100_00);
+        assertTrue(journal.compact(w));
+        for (int i = 0; i < 3; i++) add(journal, w, TxnType.EXPENSE, 1_00);
+        journal.close();
+        Path p = dir.resolve("alice.journal");
+        List<String> lines = new ArrayList<>(Files.readAllLines(p, StandardCharsets.UTF_8));
+        lines.add(2, "Q\tмусор");
+        Files.write(p, lines, StandardCharsets.UTF_8);
+
+        WalletJournal j2 = new WalletJournal(storage);
+        // половина журнала не применяется: кошелёк — ровно снимок
+        Wallet r = j2.recover("alice").orElseThrow();
+        assertEquals(1, r.size());
+        assertEquals(100_00, r.balance());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertTrue(files.anyMatch(f -> f.getFileName().toString().startsWith("alice.journal.broken-")));
+        }
+        // дальше журнал ведётся с чистого листа, отложенные записи не проигрываются повторно
+        add(j2, r, TxnType.EXPENSE, 30_00);
+        assertTrue(j2.compact(r));
+        add(j2, r, TxnType.EXPENSE, 20_00);
+        j2.close();
+
+        Wallet again = new WalletJournal(storage).recover("alice").orElseThrow();
+        assertEquals(3, again.size());
+        assertEquals(50_00, again.balance());
+    }
+
+    @ParameterizedTest
+    @EnumSource(FileStorage.Format.class)
+    void crashBetweenSnapshotAndJournalRestartDoesNotReplayTwice(FileStorage.Format format) throws Exception {
+        FileStorage storage = new FileStorage(dir, format);
+        WalletJournal journal = new WalletJournal(storage);
+        Wallet w = open(journal, "alice");
+        for (int i = 0; i < 5; i++) add(journal, w, TxnType.EXPENSE, 10_00);
+        journal.flush("alice");
+        Path p = dir.resolve("alice.journal");
+        byte[] beforeRestart = Files.readAllBytes(p);
+        assertTrue(journal.compact(w));
+        journal.close();
+        // снимок уже заменён, а журнал ещё старый: так выглядит сбой между переименованием и усечением
+        Files.write(p, beforeRestart);
+
+        WalletJournal j2 = new WalletJournal(storage);
+        assertEquals(5, j2.read("alice").orElseThrow().size());
+        Wallet r = j2.recover("alice").orElseThrow();
+        assertEquals(5, r.size());
+        assertEquals(-50_00, r.balance());
+        // запись после восстановления не должна попасть в уже учтённую снимком часть журнала
+        add(j2, r, TxnType.INCOME, 7_00);
+        j2.close();
+
+        Wallet again = new WalletJournal(storage).recover("alice").orElseThrow();
+        assertEquals(6, again.size());
+        assertEquals(-43_00, again.balance());
+    }
+
+    private static Wallet open(WalletJournal journal, String login) {
+        return journal.recover(login).orElseGet(() -> new Wallet(login));
+    }
+
+    private static void add(WalletJournal journal, Wallet w, TxnType type, long amount) throws Exception {
+        Transaction t = new Transaction(type, "Еда", amount, null, AT.plusMinutes(w.size()));
+        w.addTransaction(t);
+        journal.appendTransaction(w.getOwnerLogin(), t);
+    }
+}
@@ -0,0 +1,67 @@
+package Services;
+
+import Models.Transaction;
+import Models.Wallet;
+import Repositories.ConcurrentWalletRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletServiceTest {
+    private static final LocalDateTime AT = LocalDateTime.of(2024, 6, 1, 9, 0);
+
+    @TempDir
+    Path dir;
+
+    // журнал, который отказывает в записи зачисления получателю
+    private static final class FailingJournal extends WalletJournal {
+        volatile String failFor;
+
+        FailingJournal(FileStorage storage) {
+            super(storage);
+        }
+
+        @Override
+        public void appendTransaction(String login, Transaction t) throws IOException {
+            if (login.equals(failFor)) throw new IOException("диск заполнен");
+            super.appendTransaction(login, t);
+        }
+    }
+
+    @Test
+    void failedCreditRollsBackDebitInMemoryAndJournal() throws Exception {
+        FileStorage storage = new FileStorage(dir, FileStorage.Format.JSON);
+        FailingJournal journal = new FailingJournal(storage);
+        WalletService wallets = new WalletService(new ConcurrentWalletRepository(), journal);
+        wallets.addIncome("alice", "Зарплата", 100_00, null, AT);
+        wallets.addIncome("bob", "Зарплата", 10_00, null, AT);
+
+        journal.failFor = "bob";
+        assertThrows(IllegalStateException.class,
+                () -> wallets.transfer("alice", "bob", 30_00, "Переводы", "bob", "alice", AT.plusHours(1)));
+        assertEquals(100_00, wallets.read("alice", Wallet::balance));
+        assertEquals(1, wallets.read("alice", Wallet::size));
+        assertEquals(10_00, wallets.read("bob", Wallet::balance));
+
+        journal.failFor = null;
+        wallets.transfer("alice", "bob", 40_00, "Переводы", "bob", "alice", AT.plusHours(2));
+        journal.close();
+
+        // списание осталось в журнале, но за ним идёт компенсирующая запись X
+        assertTrue(Files.readAllLines(dir.resolve("alice.journal"), StandardCharsets.UTF_8).stream().anyMatch(l -> l.startsWith("X\t")));
+        WalletJournal reopened = new WalletJournal(storage);
+        Wallet alice = reopened.recover("alice").orElseThrow();
+        Wallet bob = reopened.recover("bob").orElseThrow();
+        assertEquals(60_00, alice.balance());
+        assertEquals(2, alice.size());
+        assertEquals(50_00, bob.balance());
+        assertEquals(110_00, alice.balance() + bob.balance());
+    }
+}